@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("org.jetbrains.kotlin.jvm") version "2.1.0"
     id("org.jetbrains.intellij.platform") version "2.7.1"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "io.wdsj"
@@ -18,8 +19,26 @@ dependencies {
     intellijPlatform {
         create("IC", "2025.1.4.1")
         testFramework(org.jetbrains.intellij.platform.gradle.TestFrameworkType.Platform)
+        testFramework(org.jetbrains.intellij.platform.gradle.TestFrameworkType.Plugin.Java)
         bundledPlugin("com.intellij.java")
     }
+
+    testImplementation("junit:junit:4.13.2")
+    testImplementation("org.opentest4j:opentest4j:1.3.0")
+}
+
+configurations {
+    // The benchmarks run the folding engine against the platform jars, outside the IDE
+    named("jmhImplementation") {
+        extendsFrom(configurations.compileOnly.get())
+    }
+}
+
+jmh {
+    profilers = listOf("gc")
+    warmupIterations = 3
+    iterations = 5
+    fork = 1
 }
 
 intellijPlatform {
@@ -40,6 +59,12 @@ tasks {
         sourceCompatibility = "21"
         targetCompatibility = "21"
     }
+
+    test {
+        systemProperty("java.awt.headless", "true")
+        // Scales the time and allocation budgets of the performance suite on slow machines
+        systemProperty("fqnfolder.perf.budgetScale", providers.gradleProperty("fqnfolder.perf.budgetScale").getOrElse("1.0"))
+    }
 }
 
 kotlin {
@@ -0,0 +1,103 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import com.intellij.openapi.util.TextRange;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FoldingConflictResolverBenchmark {
+
+    private static final int OCCURRENCES = 3;
+
+    @Param({"unique", "collisions", "deep"})
+    public String shape;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    @Param({"sequential", "parallel"})
+    public String execution;
+
+    private List<String> names;
+    private Int2ObjectMap<List<QualifiedReference>> qualifiedNames;
+    private ExecutorService executor;
+    private FoldingConflictResolver.ExecutionPolicy policy;
+    private FoldingConflictResolver resolver;
+
+    @Setup
+    public void setUp() {
+        names = SyntheticNames.generate(shape, size);
+        FqnSymbolTable symbols = new FqnSymbolTable();
+        qualifiedNames = references(symbols, names);
+
+        policy = FoldingConflictResolver.ExecutionPolicy.SEQUENTIAL;
+        if (execution.equals("parallel")) {
+            executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            policy = new FoldingConflictResolver.ExecutionPolicy(512, executor);
+        }
+        resolver = new FoldingConflictResolver(symbols, policy);
+    }
+
+    private static Int2ObjectMap<List<QualifiedReference>> references(FqnSymbolTable symbols, List<String> names) {
+        Int2ObjectMap<List<QualifiedReference>> qualifiedNames = new Int2ObjectOpenHashMap<>();
+        int offset = 0;
+        for (String name : names) {
+            int fqnId = symbols.intern(name);
+            int simpleNameId = symbols.getInfo(fqnId).simpleNameId();
+            for (int i = 0; i < OCCURRENCES; i++) {
+                List<QualifiedReference> references = qualifiedNames.get(simpleNameId);
+                if (references == null) {
+                    references = new ArrayList<>();
+                    qualifiedNames.put(simpleNameId, references);
+                }
+                references.add(new QualifiedReference(null, new TextRange(offset, offset + name.length()), fqnId));
+                offset += name.length() + 1;
+            }
+        }
+        return qualifiedNames;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Steady state: distinguishing names of repeated conflict groups come from the symbol table
+    @Benchmark
+    public Map<QualifiedReference, String> resolveConflicts() {
+        return resolver.resolveConflicts(qualifiedNames);
+    }
+
+    // First pass over the names: a fresh symbol table per call, every distinguishing name is computed
+    @Benchmark
+    public Map<QualifiedReference, String> resolveConflictsFreshTable(FreshTable table) {
+        return table.resolver.resolveConflicts(table.qualifiedNames);
+    }
+
+    @State(Scope.Thread)
+    public static class FreshTable {
+
+        private Int2ObjectMap<List<QualifiedReference>> qualifiedNames;
+        private FoldingConflictResolver resolver;
+
+        @Setup(Level.Invocation)
+        public void setUp(FoldingConflictResolverBenchmark benchmark) {
+            FqnSymbolTable symbols = new FqnSymbolTable();
+            qualifiedNames = references(symbols, benchmark.names);
+            resolver = new FoldingConflictResolver(symbols, benchmark.policy);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.wdsj.fqnfolder.folding;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class QualifiedNameParsingBenchmark {
+
+    @Param({"unique", "deep"})
+    public String shape;
+
+    @Param({"10000"})
+    public int size;
+
+    private String text;
+    private int[] starts;
+    private int[] ends;
+    private FqnSymbolTable symbols;
+
+    @Setup
+    public void setUp() {
+        // All names in one buffer, like references inside a file's text
+        List<String> names = SyntheticNames.generate(shape, size);
+        StringBuilder sb = new StringBuilder();
+        starts = new int[names.size()];
+        ends = new int[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            starts[i] = sb.length();
+            sb.append(names.get(i));
+            ends[i] = sb.length();
+            sb.append(' ');
+        }
+        text = sb.toString();
+        symbols = new FqnSymbolTable();
+    }
+
+    @Benchmark
+    public void simpleNameStart(Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            blackhole.consume(QualifiedNameParser.simpleNameStart(text, starts[i], ends[i]));
+        }
+    }
+
+    @Benchmark
+    public void internAndDerive(Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            blackhole.consume(symbols.getInfo(symbols.intern(text, starts[i], ends[i])));
+        }
+    }
+
+    @Benchmark
+    public int[] findDottedRuns() {
+        return QualifiedNameParser.findDottedRuns(text, 0, 16);
+    }
+
+    // The split based getSimpleName the parser replaced, kept as a baseline
+    @Benchmark
+    public void splitSimpleName(Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            String[] parts = text.substring(starts[i], ends[i]).split("\\.");
+            String effectiveSimpleName = parts[parts.length - 1];
+            for (int j = parts.length - 2; j >= 0; j--) {
+                String potentialOuter = parts[j];
+                if (!potentialOuter.isEmpty() && Character.isUpperCase(potentialOuter.charAt(0)) &&
+                        !potentialOuter.equals(potentialOuter.toLowerCase())) {
+                    effectiveSimpleName = potentialOuter + "." + effectiveSimpleName;
+                } else {
+                    break;
+                }
+            }
+            blackhole.consume(effectiveSimpleName);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.wdsj.fqnfolder.folding;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReverseSegmentTrieBenchmark {
+
+    @Param({"collisions", "deep"})
+    public String shape;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private final List<String[]> conflictGroups = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        Map<String, List<String>> bySimpleName = new HashMap<>();
+        for (String name : SyntheticNames.generate(shape, size)) {
+            String simpleName = name.substring(QualifiedNameParser.simpleNameStart(name, 0, name.length()));
+            bySimpleName.computeIfAbsent(simpleName, k -> new ArrayList<>()).add(name);
+        }
+        for (List<String> group : bySimpleName.values()) {
+            conflictGroups.add(group.toArray(String[]::new));
+        }
+    }
+
+    // What findMinimumDistinguishingNames does for every conflict group on a cache miss
+    @Benchmark
+    public void distinguishingNames(Blackhole blackhole) {
+        for (String[] group : conflictGroups) {
+            ReverseSegmentTrie trie = new ReverseSegmentTrie();
+            for (String name : group) {
+                trie.add(name);
+            }
+            for (String name : group) {
+                blackhole.consume(trie.shortestUniqueSuffix(name));
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.wdsj.fqnfolder.folding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+final class SyntheticNames {
+
+    private static final String[] SIMPLE_NAMES = {"Builder", "Entry", "Node", "List", "Type", "Factory", "Handler", "Config"};
+    private static final String[] SEGMENTS = {"com", "org", "io", "example", "generated", "model", "proto", "dto", "impl", "internal", "api", "util"};
+
+    private SyntheticNames() {
+    }
+
+    // unique: distinct simple names, collisions: groups of same-named types, deep: collisions that differ far from the end
+    static List<String> generate(String shape, int size) {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            switch (shape) {
+                case "unique" -> names.add(packageName(random, 3) + ".Type" + i);
+                case "collisions" -> names.add(packageName(random, 3) + ".p" + i + "." + SIMPLE_NAMES[i % SIMPLE_NAMES.length]);
+                case "deep" -> names.add("p" + i + "." + packageName(random, 10) + ".Outer." + SIMPLE_NAMES[i % SIMPLE_NAMES.length]);
+                default -> throw new IllegalArgumentException(shape);
+            }
+        }
+        return names;
+    }
+
+    private static String packageName(Random random, int depth) {
+        StringBuilder sb = new StringBuilder(SEGMENTS[random.nextInt(3)]);
+        for (int i = 1; i < depth; i++) {
+            sb.append('.').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.settings.PluginSettings;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.GeneratedSourcesFilter;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiJavaFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Excluded files and packages from the settings, compiled once per settings change
+public final class ExclusionFilter {
+
+    private static final Key<GeneratedSource> GENERATED_SOURCE_KEY = Key.create("fqnfolder.generatedSource");
+    private static volatile ExclusionFilter current;
+
+    private final long settingsStamp;
+    private final boolean excludeGeneratedSources;
+    @Nullable
+    private final GlobMatcher fileGlobs; // Null without any glob
+    private final PackagePrefixTrie packages = new PackagePrefixTrie();
+
+    private ExclusionFilter(PluginSettings settings) {
+        settingsStamp = settings.getModificationCount();
+        excludeGeneratedSources = settings.isExcludeGeneratedSources();
+
+        List<String> globs = new ArrayList<>();
+        for (String line : StringUtil.splitByLines(settings.getExcludedFilePatterns())) {
+            String glob = line.trim().replace('\\', '/');
+            if (!glob.isEmpty()) {
+                globs.add(glob);
+            }
+        }
+        fileGlobs = globs.isEmpty() ? null : new GlobMatcher(globs);
+
+        for (String line : StringUtil.splitByLines(settings.getExcludedPackages())) {
+            String prefix = StringUtil.trimEnd(StringUtil.trimEnd(line.trim(), ".*"), '.');
+            if (!prefix.isEmpty()) {
+                packages.add(prefix);
+            }
+        }
+    }
+
+    public static ExclusionFilter getInstance(PluginSettings settings) {
+        ExclusionFilter filter = current;
+        if (filter == null || filter.settingsStamp != settings.getModificationCount()) {
+            filter = new ExclusionFilter(settings);
+            current = filter;
+        }
+        return filter;
+    }
+
+    public boolean isExcluded(PsiJavaFile javaFile) {
+        VirtualFile file = javaFile.getViewProvider().getVirtualFile();
+        if (fileGlobs != null && fileGlobs.matches(relativePath(file, javaFile.getProject()))) {
+            return true;
+        }
+        return excludeGeneratedSources && isGeneratedSource(file, javaFile.getProject());
+    }
+
+    // Asked on every fold pass, the answer only changes with the project roots
+    private static boolean isGeneratedSource(VirtualFile file, Project project) {
+        long rootsStamp = ProjectRootManager.getInstance(project).getModificationCount();
+        long dumbStamp = DumbService.getInstance(project).getModificationTracker().getModificationCount();
+        GeneratedSource cached = file.getUserData(GENERATED_SOURCE_KEY);
+        if (cached == null || cached.rootsStamp() != rootsStamp || cached.dumbStamp() != dumbStamp) {
+            cached = new GeneratedSource(rootsStamp, dumbStamp, GeneratedSourcesFilter.isGeneratedSourceByAnyFilter(file, project));
+            file.putUserData(GENERATED_SOURCE_KEY, cached);
+        }
+        return cached.generated();
+    }
+
+    public boolean hasExcludedPackages() {
+        return !packages.isEmpty();
+    }
+
+    public boolean isExcludedName(CharSequence qualifiedName) {
+        return packages.matches(qualifiedName);
+    }
+
+    // Globs with a slash are matched from the project directory, the others against the file name in any directory
+    private static String relativePath(VirtualFile file, Project project) {
+        String path = file.getPath();
+        String basePath = project.getBasePath();
+        if (basePath != null && path.length() > basePath.length() + 1 && path.startsWith(basePath)
+                && path.charAt(basePath.length()) == '/') {
+            return path.substring(basePath.length() + 1);
+        }
+        return path;
+    }
+
+    private record GeneratedSource(long rootsStamp, long dumbStamp, boolean generated) {
+    }
+}
@@ -0,0 +1,121 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import com.intellij.lang.ASTNode;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// Folds of one file in flat arrays sorted by start offset, each placeholder stored once
+public final class FoldedNames {
+
+    private static final int HEADER_BYTES = 16;
+
+    public static final FoldedNames EMPTY = new FoldedNames(new ASTNode[0], new int[0], new int[0], new String[0]);
+
+    private final ASTNode[] nodes;
+    private final int[] offsets; // Start and end offset of each fold
+    private final int[] placeholderIndexes;
+    private final String[] placeholders;
+
+    private FoldedNames(ASTNode[] nodes, int[] offsets, int[] placeholderIndexes, String[] placeholders) {
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.placeholderIndexes = placeholderIndexes;
+        this.placeholders = placeholders;
+    }
+
+    public static FoldedNames of(Map<QualifiedReference, String> foldedNames) {
+        if (foldedNames.isEmpty()) {
+            return EMPTY;
+        }
+
+        QualifiedReference[] refs = new QualifiedReference[foldedNames.size()];
+        String[] names = new String[refs.length];
+        int i = 0;
+        for (Map.Entry<QualifiedReference, String> entry : foldedNames.entrySet()) {
+            refs[i] = entry.getKey();
+            names[i] = entry.getValue();
+            i++;
+        }
+
+        int[] order = new int[refs.length];
+        for (i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        IntArrays.quickSort(order, (a, b) -> {
+            int byStart = Integer.compare(refs[a].range().getStartOffset(), refs[b].range().getStartOffset());
+            return byStart != 0 ? byStart : Integer.compare(refs[a].range().getEndOffset(), refs[b].range().getEndOffset());
+        });
+
+        ASTNode[] nodes = new ASTNode[refs.length];
+        int[] offsets = new int[refs.length * 2];
+        int[] placeholderIndexes = new int[refs.length];
+        Object2IntMap<String> placeholderTable = new Object2IntOpenHashMap<>();
+        placeholderTable.defaultReturnValue(-1);
+        for (i = 0; i < order.length; i++) {
+            QualifiedReference ref = refs[order[i]];
+            nodes[i] = ref.node();
+            offsets[2 * i] = ref.range().getStartOffset();
+            offsets[2 * i + 1] = ref.range().getEndOffset();
+
+            String name = names[order[i]];
+            int index = placeholderTable.getInt(name);
+            if (index < 0) {
+                index = placeholderTable.size();
+                placeholderTable.put(name, index);
+            }
+            placeholderIndexes[i] = index;
+        }
+
+        String[] placeholders = new String[placeholderTable.size()];
+        for (Object2IntMap.Entry<String> entry : placeholderTable.object2IntEntrySet()) {
+            placeholders[entry.getIntValue()] = entry.getKey();
+        }
+        return new FoldedNames(nodes, offsets, placeholderIndexes, placeholders);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public ASTNode getNode(int index) {
+        return nodes[index];
+    }
+
+    public int getStartOffset(int index) {
+        return offsets[2 * index];
+    }
+
+    public int getEndOffset(int index) {
+        return offsets[2 * index + 1];
+    }
+
+    public String getPlaceholder(int index) {
+        return placeholders[placeholderIndexes[index]];
+    }
+
+    public boolean isSameAs(FoldedNames other) {
+        if (other == this) {
+            return true;
+        }
+        if (other.nodes.length != nodes.length || !Arrays.equals(other.offsets, offsets)) {
+            return false;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (other.nodes[i] != nodes[i] || !other.getPlaceholder(i).equals(getPlaceholder(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Assumes compressed references. The AST nodes belong to the file, the placeholder strings are not counted.
+    public long estimateRetainedBytes() {
+        long slots = (long) nodes.length + offsets.length + placeholderIndexes.length + placeholders.length;
+        return HEADER_BYTES * 5 + 4 * slots;
+    }
+}
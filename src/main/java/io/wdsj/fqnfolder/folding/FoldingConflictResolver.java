@@ -1,104 +1,298 @@
 package io.wdsj.fqnfolder.folding;
 
 import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import it.unimi.dsi.fastutil.ints.*;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class FoldingConflictResolver {
 
+    private final FqnSymbolTable symbols;
+    private final ExecutionPolicy policy;
+
+    public FoldingConflictResolver() {
+        this(FqnSymbolTable.getInstance(), ExecutionPolicy.bounded());
+    }
+
+    public FoldingConflictResolver(FqnSymbolTable symbols, ExecutionPolicy policy) {
+        this.symbols = symbols;
+        this.policy = policy;
+    }
+
+    public Map<QualifiedReference, String> resolveConflicts(
+            Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        return resolveConflicts(qualifiedNames, null, null);
+    }
+
+    // Pinned placeholders never change, names seen for the first time are told apart from them as well.
+    // Known names are the sorted qualified name ids used anywhere in the project, by simple name id.
     public Map<QualifiedReference, String> resolveConflicts(
-            Map<String, List<QualifiedReference>> qualifiedNames) {
+            Int2ObjectMap<List<QualifiedReference>> qualifiedNames, @Nullable PinnedPlaceholders pins,
+            @Nullable Int2ObjectMap<int[]> knownNames) {
+
+        FoldingEvents.ConflictResolution event = new FoldingEvents.ConflictResolution();
+        event.begin();
 
         Map<QualifiedReference, String> result = new HashMap<>();
+        List<Int2ObjectMap.Entry<List<QualifiedReference>>> conflictGroups = new ArrayList<>();
+        int conflictingReferences = 0;
+        boolean parallel = false;
+        boolean completed = false;
+        try {
+            for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : qualifiedNames.int2ObjectEntrySet()) {
+                ProgressManager.checkCanceled();
+                List<QualifiedReference> references = entry.getValue();
 
-        for (Map.Entry<String, List<QualifiedReference>> entry : qualifiedNames.entrySet()) {
-            String simpleName = entry.getKey();
-            List<QualifiedReference> references = entry.getValue();
+                if (references.size() == 1 && pins == null
+                        && !hasOtherNames(knownNames, entry.getIntKey(), references.getFirst().fqnId())) {
+                    result.put(references.getFirst(), symbols.getName(entry.getIntKey()));
+                } else {
+                    conflictGroups.add(entry);
+                    conflictingReferences += references.size();
+                }
+            }
 
-            if (references.size() == 1) {
-                result.put(references.getFirst(), simpleName);
+            parallel = pins == null && policy.executor() != null && conflictGroups.size() >= 2
+                    && conflictingReferences >= policy.parallelThreshold();
+            if (pins != null) {
+                synchronized (pins) { // Concurrent passes over the same file must not pin the same placeholder twice
+                    resolveConflictGroups(conflictGroups, knownNames, pins, result);
+                }
+            } else if (parallel) {
+                resolveConflictGroupsInParallel(conflictGroups, conflictingReferences, knownNames, result);
             } else {
-                resolveConflictGroup(simpleName, references, result);
+                resolveConflictGroups(conflictGroups, knownNames, null, result);
+            }
+            completed = true;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.simpleNames = qualifiedNames.size();
+                event.conflictGroups = conflictGroups.size();
+                event.conflictingReferences = conflictingReferences;
+                event.parallel = parallel;
+                event.cancelled = !completed;
+                event.commit();
             }
         }
-
         return result;
     }
 
-    private void resolveConflictGroup(String simpleName, List<QualifiedReference> references,
-                                      Map<QualifiedReference, String> result) {
+    private void resolveConflictGroups(List<Int2ObjectMap.Entry<List<QualifiedReference>>> conflictGroups,
+                                       @Nullable Int2ObjectMap<int[]> knownNames, @Nullable PinnedPlaceholders pins,
+                                       Map<QualifiedReference, String> result) {
+        for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : conflictGroups) {
+            ProgressManager.checkCanceled();
+            resolveConflictGroup(entry.getIntKey(), entry.getValue(), knownNames, pins, result);
+        }
+    }
 
-        Map<String, List<QualifiedReference>> groupedByQualified = new HashMap<>();
-        for (QualifiedReference ref : references) {
-            groupedByQualified.computeIfAbsent(ref.qualifiedName(), k -> new ArrayList<>()).add(ref);
+    private void resolveConflictGroupsInParallel(List<Int2ObjectMap.Entry<List<QualifiedReference>>> conflictGroups,
+                                                 int conflictingReferences,
+                                                 @Nullable Int2ObjectMap<int[]> knownNames,
+                                                 Map<QualifiedReference, String> result) {
+        // Batches of whole groups, each about parallelThreshold references large
+        List<List<Int2ObjectMap.Entry<List<QualifiedReference>>>> batches = new ArrayList<>();
+        List<Int2ObjectMap.Entry<List<QualifiedReference>>> batch = new ArrayList<>();
+        int batchSize = 0;
+        for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : conflictGroups) {
+            batch.add(entry);
+            batchSize += entry.getValue().size();
+            if (batchSize >= policy.parallelThreshold()) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchSize = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
         }
 
-        if (groupedByQualified.size() == 1) {
-            for (QualifiedReference ref : references) {
-                result.put(ref, simpleName);
+        ProgressIndicator indicator = ProgressManager.getGlobalProgressIndicator();
+        List<Future<Map<QualifiedReference, String>>> futures = new ArrayList<>(batches.size());
+        try {
+            for (List<Int2ObjectMap.Entry<List<QualifiedReference>>> groups : batches) {
+                futures.add(policy.executor().submit(() -> {
+                    Map<QualifiedReference, String> partial = new HashMap<>();
+                    if (indicator != null) {
+                        // Only checks the pass's cancellation, the pass thread keeps running and owns the indicator
+                        ProgressManager.getInstance().executeProcessUnderProgress(
+                                () -> resolveConflictGroups(groups, knownNames, null, partial), indicator);
+                    } else {
+                        resolveConflictGroups(groups, knownNames, null, partial);
+                    }
+                    return partial;
+                }));
+            }
+            for (Future<Map<QualifiedReference, String>> future : futures) {
+                result.putAll(ProgressIndicatorUtils.awaitWithCheckCanceled(future));
             }
+        } finally {
+            for (Future<Map<QualifiedReference, String>> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private void resolveConflictGroup(int simpleNameId, List<QualifiedReference> references,
+                                      @Nullable Int2ObjectMap<int[]> knownNames, @Nullable PinnedPlaceholders pins,
+                                      Map<QualifiedReference, String> result) {
+        if (references.size() < FoldingEvents.GROUP_EVENT_CUTOFF) {
+            doResolveConflictGroup(simpleNameId, references, knownNames, pins, result);
             return;
         }
 
-        Map<String, String> qualifiedToFolded = findMinimumDistinguishingNames(
-                groupedByQualified.keySet()
-        );
+        FoldingEvents.ConflictGroup event = new FoldingEvents.ConflictGroup();
+        event.begin();
+        int qualifiedNames = -1;
+        try {
+            qualifiedNames = doResolveConflictGroup(simpleNameId, references, knownNames, pins, result);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.simpleName = symbols.getName(simpleNameId);
+                event.references = references.size();
+                event.qualifiedNames = qualifiedNames;
+                event.cancelled = qualifiedNames < 0;
+                event.commit();
+            }
+        }
+    }
 
-        for (Map.Entry<String, List<QualifiedReference>> entry : groupedByQualified.entrySet()) {
-            String qualifiedName = entry.getKey();
-            String foldedName = qualifiedToFolded.get(qualifiedName);
+    private int doResolveConflictGroup(int simpleNameId, List<QualifiedReference> references,
+                                       @Nullable Int2ObjectMap<int[]> knownNames, @Nullable PinnedPlaceholders pins,
+                                       Map<QualifiedReference, String> result) {
 
+        Int2ObjectMap<List<QualifiedReference>> groupedByQualified = groupByQualifiedName(references);
+        Int2ObjectMap<String> placeholders = resolveGroup(simpleNameId, groupedByQualified.keySet(),
+                knownNames != null ? knownNames.get(simpleNameId) : null, pins);
+        for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : groupedByQualified.int2ObjectEntrySet()) {
+            String placeholder = placeholders.get(entry.getIntKey());
             for (QualifiedReference ref : entry.getValue()) {
-                result.put(ref, foldedName);
+                result.put(ref, placeholder);
             }
         }
+        return groupedByQualified.size();
     }
 
-    private Map<String, String> findMinimumDistinguishingNames(Set<String> qualifiedNames) {
-        Map<String, String> result = new ConcurrentHashMap<>();
-        List<String> namesList = new ArrayList<>(qualifiedNames);
+    // Placeholders of the qualified names one simple name has in a file, by qualified name id.
+    // With pins, resolveConflicts already holds their lock.
+    private Int2ObjectMap<String> resolveGroup(int simpleNameId, IntSet qualifiedNameIds,
+                                              @Nullable int[] knownNames, @Nullable PinnedPlaceholders pins) {
+        if (pins == null) {
+            int[] fqnIds = withKnownNames(qualifiedNameIds, knownNames);
+            return placeholdersOf(simpleNameId, fqnIds, qualifiedNameIds, null);
+        }
 
-        namesList.parallelStream().forEach(name -> {
-            String[] parts = name.split("\\.");
-            String simpleName = parts[parts.length - 1];
+        Int2ObjectMap<String> pinned = pins.getGroup(simpleNameId);
+        IntSet ids = new IntOpenHashSet(qualifiedNameIds);
+        ids.addAll(pinned.keySet());
+        int[] fqnIds = withKnownNames(ids, knownNames);
+        return placeholdersOf(simpleNameId, fqnIds, qualifiedNameIds, pinned);
+    }
 
-            boolean needsPrefix = false;
-            for (String otherName : namesList) {
-                if (!name.equals(otherName) && otherName.endsWith("." + simpleName)) {
-                    needsPrefix = true;
-                    break;
+    private Int2ObjectMap<String> placeholdersOf(int simpleNameId, int[] fqnIds, IntSet qualifiedNameIds,
+                                                 @Nullable Int2ObjectMap<String> pinned) {
+        String[] foldedNames = fqnIds.length == 1
+                ? new String[]{symbols.getName(simpleNameId)}
+                : symbols.getDistinguishingNames(fqnIds, this::findMinimumDistinguishingNames);
+
+        Int2ObjectMap<String> placeholders = new Int2ObjectOpenHashMap<>(qualifiedNameIds.size());
+        for (int i = 0; i < fqnIds.length; i++) {
+            if (!qualifiedNameIds.contains(fqnIds[i])) {
+                continue;
+            }
+            String foldedName = pinned != null ? pinned.get(fqnIds[i]) : null;
+            if (foldedName == null) {
+                foldedName = foldedNames[i];
+                if (pinned != null) {
+                    pinned.put(fqnIds[i], foldedName);
                 }
             }
+            placeholders.put(fqnIds[i], foldedName);
+        }
+        return placeholders;
+    }
 
-            if (!needsPrefix) {
-                result.put(name, simpleName);
-            } else {
-                String distinguishedName = simpleName;
-                for (int prefixLen = 1; prefixLen < parts.length; prefixLen++) {
-                    StringBuilder sb = new StringBuilder();
-                    for (int i = parts.length - prefixLen - 1; i < parts.length; i++) {
-                        if (!sb.isEmpty()) sb.append(".");
-                        sb.append(parts[i]);
-                    }
-                    distinguishedName = sb.toString();
-
-                    boolean isUnique = true;
-                    for (String otherName : namesList) {
-                        if (!name.equals(otherName) && otherName.endsWith(distinguishedName)) {
-                            isUnique = false;
-                            break;
-                        }
-                    }
+    private static boolean hasOtherNames(@Nullable Int2ObjectMap<int[]> knownNames, int simpleNameId, int fqnId) {
+        int[] known = knownNames != null ? knownNames.get(simpleNameId) : null;
+        return known != null && (known.length > 1 || known.length == 1 && known[0] != fqnId);
+    }
 
-                    if (isUnique) {
-                        break;
-                    }
+    // Usually the project already knows every name of the file, its sorted ids are then shared as they are
+    private static int[] withKnownNames(IntCollection ids, @Nullable int[] known) {
+        if (known != null) {
+            boolean allKnown = true;
+            for (IntIterator it = ids.iterator(); it.hasNext(); ) {
+                if (Arrays.binarySearch(known, it.nextInt()) < 0) {
+                    allKnown = false;
+                    break;
                 }
-                result.put(name, distinguishedName);
             }
-        });
+            if (allKnown) {
+                return known;
+            }
+            ids = new IntOpenHashSet(ids);
+            for (int id : known) {
+                ids.add(id);
+            }
+        }
+        int[] fqnIds = ids.toIntArray();
+        Arrays.sort(fqnIds);
+        return fqnIds;
+    }
+
+    private static Int2ObjectMap<List<QualifiedReference>> groupByQualifiedName(List<QualifiedReference> references) {
+        Int2ObjectMap<List<QualifiedReference>> groupedByQualified = new Int2ObjectOpenHashMap<>();
+        for (QualifiedReference ref : references) {
+            List<QualifiedReference> group = groupedByQualified.get(ref.fqnId());
+            if (group == null) {
+                group = new ArrayList<>();
+                groupedByQualified.put(ref.fqnId(), group);
+            }
+            group.add(ref);
+        }
+        return groupedByQualified;
+    }
+
+    private String[] findMinimumDistinguishingNames(int[] fqnIds) {
+        String[] qualifiedNames = new String[fqnIds.length];
+        ReverseSegmentTrie trie = new ReverseSegmentTrie();
+        for (int i = 0; i < fqnIds.length; i++) {
+            ProgressManager.checkCanceled();
+            qualifiedNames[i] = symbols.getName(fqnIds[i]);
+            trie.add(qualifiedNames[i]);
+        }
+
+        String[] result = new String[fqnIds.length];
+        for (int i = 0; i < fqnIds.length; i++) {
+            ProgressManager.checkCanceled();
+            result[i] = trie.shortestUniqueSuffix(qualifiedNames[i]);
+        }
 
         return result;
     }
+
+    public record ExecutionPolicy(int parallelThreshold, @Nullable ExecutorService executor) {
+
+        public static final ExecutionPolicy SEQUENTIAL = new ExecutionPolicy(Integer.MAX_VALUE, null);
+
+        public static ExecutionPolicy bounded() {
+            return BoundedHolder.POLICY;
+        }
+
+        private static final class BoundedHolder {
+            // Dedicated and bounded, so folding never competes with the IDE's users of the common pool
+            private static final ExecutionPolicy POLICY = new ExecutionPolicy(512,
+                    AppExecutorUtil.createBoundedApplicationPoolExecutor("FQNFolder Conflict Resolver",
+                            Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.settings.PluginSettings;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.ui.EditorNotifications;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+// Steps a file down one folding level when its passes keep going over the time budget, or once when it is over the size budget
+public final class FoldingDegradation {
+
+    static final int OVERRUNS_TO_STEP_DOWN = 3;
+
+    private static final Key<State> STATE_KEY = Key.create("fqnfolder.degradation");
+
+    private FoldingDegradation() {
+    }
+
+    public static State getState(PsiFile file) {
+        VirtualFile virtualFile = file.getViewProvider().getVirtualFile();
+        State state = virtualFile.getUserData(STATE_KEY);
+        if (state == null) {
+            state = virtualFile.putUserDataIfAbsent(STATE_KEY, new State());
+        }
+        return state;
+    }
+
+    @Nullable
+    public static State findState(VirtualFile file) {
+        return file.getUserData(STATE_KEY);
+    }
+
+    public static FoldingLevel currentLevel(PsiFile file, PluginSettings settings) {
+        return settings.isAdaptiveFolding() ? getState(file).getLevel() : FoldingLevel.FULL;
+    }
+
+    public static FoldingLevel levelFor(PsiFile file, Document document, PluginSettings settings) {
+        if (!settings.isAdaptiveFolding()) {
+            return FoldingLevel.FULL;
+        }
+
+        State state = getState(file);
+        synchronized (state) {
+            if (state.settingsStamp != settings.getModificationCount()) { // New budgets, start over
+                state.settingsStamp = settings.getModificationCount();
+                state.setLevel(FoldingLevel.FULL, null);
+                state.restored = false;
+                state.overruns = 0;
+            }
+            int lines = document.getLineCount();
+            if (state.level == FoldingLevel.FULL && !state.restored && lines > settings.getSizeBudgetLines()) {
+                state.setLevel(FoldingLevel.FULL.next(), "the file has " + lines + " lines");
+                notifyLevelChanged(file);
+            }
+            return state.level;
+        }
+    }
+
+    public static void recordPass(PsiFile file, long durationNanos, PluginSettings settings) {
+        if (!settings.isAdaptiveFolding()) {
+            return;
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        State state = getState(file);
+        synchronized (state) {
+            // A single slow pass may be a cold JIT or a GC pause, only repeated overruns step the file down
+            if (millis <= settings.getTimeBudgetMillis()) {
+                state.overruns = 0;
+                return;
+            }
+            if (++state.overruns < OVERRUNS_TO_STEP_DOWN || state.level == FoldingLevel.DISABLED) {
+                return;
+            }
+            state.overruns = 0;
+            state.setLevel(state.level.next(), OVERRUNS_TO_STEP_DOWN + " fold passes in a row went over the budget, " +
+                    "the last one took " + millis + " ms");
+        }
+        notifyLevelChanged(file);
+    }
+
+    public static void restore(Project project, VirtualFile file) {
+        State state = findState(file);
+        if (state != null) {
+            synchronized (state) {
+                state.setLevel(FoldingLevel.FULL, null);
+                state.restored = true;
+                state.overruns = 0;
+            }
+            EditorNotifications.getInstance(project).updateNotifications(file);
+            FoldingRefresher.getInstance().refreshFile(project, file);
+        }
+    }
+
+    private static void notifyLevelChanged(PsiFile file) {
+        EditorNotifications.getInstance(file.getProject()).updateNotifications(file.getViewProvider().getVirtualFile());
+    }
+
+    public static final class State implements ModificationTracker {
+
+        private volatile FoldingLevel level = FoldingLevel.FULL;
+        private volatile String reason;
+        private volatile boolean restored; // The user asked for full folding, the size budget no longer applies
+        private long settingsStamp = -1;
+        private int overruns; // Consecutive passes over the time budget
+        private volatile long modificationCount;
+
+        private void setLevel(FoldingLevel level, @Nullable String reason) {
+            if (this.level != level) {
+                this.level = level;
+                this.reason = reason;
+                modificationCount++;
+            }
+        }
+
+        public FoldingLevel getLevel() {
+            return level;
+        }
+
+        @Nullable
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public long getModificationCount() {
+            return modificationCount;
+        }
+    }
+}
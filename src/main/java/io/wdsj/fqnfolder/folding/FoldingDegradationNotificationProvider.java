@@ -0,0 +1,34 @@
+package io.wdsj.fqnfolder.folding;
+
+import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.ui.EditorNotificationPanel;
+import com.intellij.ui.EditorNotificationProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.function.Function;
+
+public class FoldingDegradationNotificationProvider implements EditorNotificationProvider {
+
+    @Nullable
+    @Override
+    public Function<? super FileEditor, ? extends JComponent> collectNotificationData(@NotNull Project project,
+                                                                                      @NotNull VirtualFile file) {
+        FoldingDegradation.State state = FoldingDegradation.findState(file);
+        if (state == null || state.getLevel() == FoldingLevel.FULL) {
+            return null;
+        }
+
+        FoldingLevel level = state.getLevel();
+        String reason = state.getReason();
+        return fileEditor -> {
+            EditorNotificationPanel panel = new EditorNotificationPanel(fileEditor, EditorNotificationPanel.Status.Info);
+            panel.setText("FQN Folder: " + level.getDescription() + (reason != null ? " because " + reason : ""));
+            panel.createActionLabel("Fold fully", () -> FoldingDegradation.restore(project, file));
+            return panel;
+        };
+    }
+}
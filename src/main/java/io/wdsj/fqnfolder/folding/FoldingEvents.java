@@ -0,0 +1,76 @@
+package io.wdsj.fqnfolder.folding;
+
+import jdk.jfr.*;
+
+// Flight Recorder events, their fields are only filled in when the event will be committed
+public final class FoldingEvents {
+
+    public static final int GROUP_EVENT_CUTOFF = 32;
+
+    private FoldingEvents() {
+    }
+
+    @Name("io.wdsj.fqnfolder.FoldPass")
+    @Label("Fold Pass")
+    @Category("FQN Folder")
+    @StackTrace(false)
+    public static class FoldPass extends Event {
+        @Label("File Path")
+        public String filePath;
+
+        @Label("File Length")
+        public int fileLength;
+
+        @Label("Quick")
+        public boolean quick;
+
+        @Label("References")
+        public int references;
+
+        @Label("Descriptors")
+        public int descriptors;
+
+        @Label("Cancelled")
+        public boolean cancelled;
+    }
+
+    @Name("io.wdsj.fqnfolder.ConflictResolution")
+    @Label("Conflict Resolution")
+    @Category("FQN Folder")
+    @StackTrace(false)
+    public static class ConflictResolution extends Event {
+        @Label("Simple Names")
+        public int simpleNames;
+
+        @Label("Conflict Groups")
+        public int conflictGroups;
+
+        @Label("Conflicting References")
+        public int conflictingReferences;
+
+        @Label("Parallel")
+        public boolean parallel;
+
+        @Label("Cancelled")
+        public boolean cancelled;
+    }
+
+    @Name("io.wdsj.fqnfolder.ConflictGroup")
+    @Label("Conflict Group")
+    @Description("A conflict group with at least " + GROUP_EVENT_CUTOFF + " references")
+    @Category("FQN Folder")
+    @StackTrace(false)
+    public static class ConflictGroup extends Event {
+        @Label("Simple Name")
+        public String simpleName;
+
+        @Label("References")
+        public int references;
+
+        @Label("Qualified Names")
+        public int qualifiedNames;
+
+        @Label("Cancelled")
+        public boolean cancelled;
+    }
+}
@@ -0,0 +1,26 @@
+package io.wdsj.fqnfolder.folding;
+
+public enum FoldingLevel {
+    FULL("All qualified names are folded"),
+    NO_STATIC_RESOLVE("Static member accesses are folded without resolving them"),
+    TYPES_ONLY("Only type references are folded"),
+    DISABLED("Qualified names are not folded");
+
+    private final String description;
+
+    FoldingLevel(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public FoldingLevel next() {
+        return this == DISABLED ? DISABLED : values()[ordinal() + 1];
+    }
+
+    public FoldingLevel atLeast(FoldingLevel other) {
+        return compareTo(other) >= 0 ? this : other;
+    }
+}
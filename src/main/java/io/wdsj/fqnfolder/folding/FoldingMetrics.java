@@ -0,0 +1,249 @@
+package io.wdsj.fqnfolder.folding;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class FoldingMetrics {
+
+    private static final Logger LOG = Logger.getInstance(FoldingMetrics.class);
+
+    private static final ThreadLocal<PassMetrics> CURRENT_PASS = new ThreadLocal<>();
+
+    private static final int[] BUCKET_LIMITS = {10_000, 100_000, 1_000_000, Integer.MAX_VALUE};
+    private static final String[] BUCKET_NAMES = {"< 10 KB", "< 100 KB", "< 1 MB", ">= 1 MB"};
+    private static final int SLOWEST_PASSES = 10;
+
+    private final Bucket[] buckets = new Bucket[BUCKET_LIMITS.length];
+    private final Bucket backgroundBucket = new Bucket("Background");
+    private final Bucket indexBucket = new Bucket("Indexing");
+    private final List<PassMetrics> slowestPasses = new ArrayList<>();
+
+    public FoldingMetrics() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(BUCKET_NAMES[i]);
+        }
+    }
+
+    public static FoldingMetrics getInstance() {
+        return ApplicationManager.getApplication().getService(FoldingMetrics.class);
+    }
+
+    // Work outside of any started pass, such as a collector driven by a test, is counted and dropped
+    public static PassMetrics current() {
+        PassMetrics metrics = CURRENT_PASS.get();
+        return metrics != null ? metrics : new PassMetrics("", 0, PassKind.FOLD);
+    }
+
+    public PassMetrics startPass(PsiFile file, int fileLength) {
+        return startPass(file, fileLength, PassKind.FOLD);
+    }
+
+    public PassMetrics startPass(PsiFile file, int fileLength, PassKind kind) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        PassMetrics metrics = new PassMetrics(virtualFile != null ? virtualFile.getPath() : file.getName(), fileLength, kind);
+        metrics.outer = CURRENT_PASS.get();
+        CURRENT_PASS.set(metrics);
+        return metrics;
+    }
+
+    public void finishPass(PassMetrics metrics, boolean completed) {
+        if (metrics.outer != null) {
+            CURRENT_PASS.set(metrics.outer);
+            metrics.outer = null;
+        } else {
+            CURRENT_PASS.remove();
+        }
+        metrics.totalNanos = System.nanoTime() - metrics.startNanos;
+        if (!completed) {
+            return;
+        }
+
+        switch (metrics.kind) {
+            case BACKGROUND -> backgroundBucket.add(metrics);
+            case INDEX -> indexBucket.add(metrics);
+            default -> {
+                int bucket = 0;
+                while (metrics.fileLength >= BUCKET_LIMITS[bucket]) {
+                    bucket++;
+                }
+                buckets[bucket].add(metrics);
+            }
+        }
+
+        synchronized (slowestPasses) {
+            slowestPasses.add(metrics);
+            slowestPasses.sort(Comparator.comparingLong((PassMetrics m) -> m.totalNanos).reversed());
+            if (slowestPasses.size() > SLOWEST_PASSES) {
+                slowestPasses.removeLast();
+            }
+        }
+    }
+
+    public List<BucketSummary> getBucketSummaries() {
+        List<BucketSummary> summaries = new ArrayList<>(buckets.length);
+        for (Bucket bucket : buckets) {
+            summaries.add(bucket.summarize());
+        }
+        summaries.add(backgroundBucket.summarize());
+        summaries.add(indexBucket.summarize());
+        return summaries;
+    }
+
+    public List<PassMetrics> getSlowestPasses() {
+        synchronized (slowestPasses) {
+            return new ArrayList<>(slowestPasses);
+        }
+    }
+
+    public void reset() {
+        for (Bucket bucket : buckets) {
+            bucket.reset();
+        }
+        backgroundBucket.reset();
+        indexBucket.reset();
+        synchronized (slowestPasses) {
+            slowestPasses.clear();
+        }
+    }
+
+    public void dumpToLog() {
+        StringBuilder sb = new StringBuilder("FQN Folder folding metrics\n");
+        for (BucketSummary summary : getBucketSummaries()) {
+            sb.append(summary).append('\n');
+        }
+        sb.append("Slowest passes:\n");
+        for (PassMetrics metrics : getSlowestPasses()) {
+            sb.append("  ").append(metrics).append('\n');
+        }
+        LOG.info(sb.toString());
+    }
+
+    public enum PassKind {
+        FOLD, // Asked for by the editor
+        BACKGROUND, // Prewarm and the viewport fill
+        INDEX
+    }
+
+    public static final class PassMetrics {
+
+        final String filePath;
+        final int fileLength;
+        final PassKind kind;
+        PassMetrics outer; // The pass this one runs inside of, restored when it finishes
+        final long startNanos = System.nanoTime();
+        long totalNanos;
+        long collectionNanos;
+        long resolveNanos;
+        long conflictNanos;
+        int nodesVisited;
+        int resolveCalls;
+        int references;
+        int descriptors;
+        boolean fileCacheHit = true;
+        int memberCacheHits;
+        int memberCacheMisses;
+        long retainedBytes;
+
+        PassMetrics(String filePath, int fileLength, PassKind kind) {
+            this.filePath = filePath;
+            this.fileLength = fileLength;
+            this.kind = kind;
+        }
+
+        @Override
+        public String toString() {
+            return (kind == PassKind.FOLD ? "" : "[" + kind.name().toLowerCase(Locale.ROOT) + "] ") + filePath + " (" + fileLength + " chars): " + TimeUnit.NANOSECONDS.toMillis(totalNanos) + " ms, " +
+                    references + " references, " + resolveCalls + " resolves, " + nodesVisited + " nodes";
+        }
+    }
+
+    public record BucketSummary(String name, long passes, double p50Millis, double p99Millis,
+                                double collectionMillis, double resolveMillis, double conflictMillis,
+                                double nodesVisited, double resolveCalls, double references, double descriptors,
+                                double fileCacheHitRate, double memberCacheHitRate, double retainedKb) {
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%-9s passes=%d p50=%.1fms p99=%.1fms collection=%.1fms resolve=%.1fms conflicts=%.1fms " +
+                            "nodes=%.0f resolves=%.0f references=%.0f descriptors=%.0f fileCache=%.0f%% memberCache=%.0f%% " +
+                            "retained=%.1fKB",
+                    name, passes, p50Millis, p99Millis, collectionMillis, resolveMillis, conflictMillis,
+                    nodesVisited, resolveCalls, references, descriptors, fileCacheHitRate * 100, memberCacheHitRate * 100,
+                    retainedKb);
+        }
+    }
+
+    private static final class Bucket {
+
+        private static final int WINDOW = 512;
+
+        private final String name;
+        private final long[] durations = new long[WINDOW]; // Ring of recent pass durations for the percentiles
+        private long passes;
+        private long collectionNanos;
+        private long resolveNanos;
+        private long conflictNanos;
+        private long nodesVisited;
+        private long resolveCalls;
+        private long references;
+        private long descriptors;
+        private long fileCacheHits;
+        private long memberCacheHits;
+        private long memberCacheLookups;
+        private long retainedBytes;
+
+        Bucket(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(PassMetrics metrics) {
+            durations[(int) (passes % WINDOW)] = metrics.totalNanos;
+            passes++;
+            collectionNanos += metrics.collectionNanos;
+            resolveNanos += metrics.resolveNanos;
+            conflictNanos += metrics.conflictNanos;
+            nodesVisited += metrics.nodesVisited;
+            resolveCalls += metrics.resolveCalls;
+            references += metrics.references;
+            descriptors += metrics.descriptors;
+            fileCacheHits += metrics.fileCacheHit ? 1 : 0;
+            memberCacheHits += metrics.memberCacheHits;
+            memberCacheLookups += metrics.memberCacheHits + metrics.memberCacheMisses;
+            retainedBytes += metrics.retainedBytes;
+        }
+
+        synchronized BucketSummary summarize() {
+            if (passes == 0) {
+                return new BucketSummary(name, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+            }
+            long[] window = Arrays.copyOf(durations, (int) Math.min(passes, WINDOW));
+            Arrays.sort(window);
+            double p = passes;
+            return new BucketSummary(name, passes,
+                    millis(window[window.length / 2]),
+                    millis(window[Math.min(window.length - 1, (int) Math.ceil(window.length * 0.99) - 1)]),
+                    millis(collectionNanos) / p, millis(resolveNanos) / p, millis(conflictNanos) / p,
+                    nodesVisited / p, resolveCalls / p, references / p, descriptors / p,
+                    fileCacheHits / p, memberCacheLookups == 0 ? 0 : (double) memberCacheHits / memberCacheLookups,
+                    retainedBytes / 1024.0 / p);
+        }
+
+        synchronized void reset() {
+            Arrays.fill(durations, 0);
+            passes = 0;
+            collectionNanos = resolveNanos = conflictNanos = 0;
+            nodesVisited = resolveCalls = references = descriptors = 0;
+            fileCacheHits = memberCacheHits = memberCacheLookups = retainedBytes = 0;
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.settings.PluginSettings;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.ProjectActivity;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import kotlin.Unit;
+import kotlin.coroutines.Continuation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+// Fills the file caches of opened Java files before their first fold pass
+public class FoldingPrewarmer {
+
+    // One file at a time, restored tabs must not compete with the editor being shown
+    private final ExecutorService executor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("FQNFolder Prewarm", 1);
+
+    public static FoldingPrewarmer getInstance() {
+        return ApplicationManager.getApplication().getService(FoldingPrewarmer.class);
+    }
+
+    public void prewarm(Project project, VirtualFile file) {
+        if (!PluginSettings.getInstance().isEnabled()
+                || !FileTypeRegistry.getInstance().isFileOfType(file, JavaFileType.INSTANCE)) {
+            return;
+        }
+
+        ReadAction.nonBlocking(() -> {
+                    PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+                    if (psiFile instanceof PsiJavaFile javaFile) {
+                        QualifiedNameFoldingBuilder.precomputeFoldedNames(javaFile);
+                    }
+                })
+                .inSmartMode(project)
+                .withDocumentsCommitted(project)
+                .expireWhen(() -> project.isDisposed() || !file.isValid())
+                .coalesceBy(this, file)
+                .submit(executor);
+    }
+
+    public static class OpenListener implements FileEditorManagerListener {
+
+        private final Project project;
+
+        public OpenListener(Project project) {
+            this.project = project;
+        }
+
+        @Override
+        public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+            getInstance().prewarm(project, file);
+        }
+    }
+
+    public static class StartupActivity implements ProjectActivity {
+
+        @Nullable
+        @Override
+        public Object execute(@NotNull Project project, @NotNull Continuation<? super Unit> continuation) {
+            // Selected tabs first, the executor works through the rest in order
+            FileEditorManager fileEditorManager = FileEditorManager.getInstance(project);
+            Set<VirtualFile> files = new LinkedHashSet<>(List.of(fileEditorManager.getSelectedFiles()));
+            files.addAll(List.of(fileEditorManager.getOpenFiles()));
+            for (VirtualFile file : files) {
+                getInstance().prewarm(project, file);
+            }
+            return Unit.INSTANCE;
+        }
+    }
+}
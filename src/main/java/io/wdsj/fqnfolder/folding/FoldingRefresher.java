@@ -0,0 +1,138 @@
+package io.wdsj.fqnfolder.folding;
+
+import com.intellij.codeInsight.folding.CodeFoldingManager;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileEditor.*;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class FoldingRefresher implements Disposable {
+
+    private static final int DEBOUNCE_MILLIS = 300;
+    private static final Key<Boolean> STALE_FOLDS_KEY = Key.create("fqnfolder.staleFolds");
+    private static final Key<Boolean> FOLDED_WHILE_DUMB_KEY = Key.create("fqnfolder.foldedWhileDumb");
+
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+
+    public static FoldingRefresher getInstance() {
+        return ApplicationManager.getApplication().getService(FoldingRefresher.class);
+    }
+
+    // Quick successive calls collapse into one refresh
+    public void scheduleRefresh() {
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::refreshOpenEditors, DEBOUNCE_MILLIS);
+    }
+
+    private void refreshOpenEditors() {
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (!project.isDisposed()) {
+                refreshProject(project);
+            }
+        }
+    }
+
+    public void refreshProject(Project project) {
+        FileEditorManager fileEditorManager = FileEditorManager.getInstance(project);
+        Set<Editor> visible = new HashSet<>();
+        for (FileEditor fileEditor : fileEditorManager.getSelectedEditors()) {
+            if (fileEditor instanceof TextEditor textEditor && isJavaEditor(textEditor)) {
+                visible.add(textEditor.getEditor());
+                refresh(project, textEditor.getEditor());
+            }
+        }
+
+        // Hidden editors are updated once they get selected
+        for (FileEditor fileEditor : fileEditorManager.getAllEditors()) {
+            if (fileEditor instanceof TextEditor textEditor && isJavaEditor(textEditor)
+                    && !visible.contains(textEditor.getEditor())) {
+                textEditor.getEditor().putUserData(STALE_FOLDS_KEY, Boolean.TRUE);
+            }
+        }
+    }
+
+    public void refreshFile(Project project, VirtualFile file) {
+        for (FileEditor fileEditor : FileEditorManager.getInstance(project).getEditors(file)) {
+            if (fileEditor instanceof TextEditor textEditor) {
+                refresh(project, textEditor.getEditor());
+            }
+        }
+    }
+
+    public void refresh(Project project, Editor editor) {
+        editor.putUserData(STALE_FOLDS_KEY, null);
+        ReadAction.nonBlocking(() -> CodeFoldingManager.getInstance(project).updateFoldRegionsAsync(editor, false))
+                .withDocumentsCommitted(project)
+                .expireWhen(() -> project.isDisposed() || editor.isDisposed())
+                .coalesceBy(this, editor)
+                .finishOnUiThread(ModalityState.any(), apply -> {
+                    if (apply != null) {
+                        apply.run();
+                    }
+                })
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    public static void markFoldedWhileDumb(Project project) {
+        project.putUserData(FOLDED_WHILE_DUMB_KEY, Boolean.TRUE);
+    }
+
+    private static boolean isJavaEditor(TextEditor textEditor) {
+        VirtualFile file = textEditor.getFile();
+        return file != null && FileTypeRegistry.getInstance().isFileOfType(file, JavaFileType.INSTANCE);
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    // One refresh of all open editors once indexing is over, and only if something was folded without it
+    public static class SmartModeListener implements DumbService.DumbModeListener {
+
+        private final Project project;
+
+        public SmartModeListener(Project project) {
+            this.project = project;
+        }
+
+        @Override
+        public void exitDumbMode() {
+            if (project.getUserData(FOLDED_WHILE_DUMB_KEY) != null) {
+                project.putUserData(FOLDED_WHILE_DUMB_KEY, null);
+                ApplicationManager.getApplication().invokeLater(() -> getInstance().refreshProject(project), project.getDisposed());
+            }
+        }
+    }
+
+    public static class SelectionListener implements FileEditorManagerListener {
+
+        private final Project project;
+
+        public SelectionListener(Project project) {
+            this.project = project;
+        }
+
+        @Override
+        public void selectionChanged(@NotNull FileEditorManagerEvent event) {
+            if (event.getNewEditor() instanceof TextEditor textEditor
+                    && textEditor.getEditor().getUserData(STALE_FOLDS_KEY) != null) {
+                getInstance().refresh(project, textEditor.getEditor());
+            }
+        }
+    }
+}
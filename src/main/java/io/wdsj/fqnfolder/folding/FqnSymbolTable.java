@@ -0,0 +1,229 @@
+package io.wdsj.fqnfolder.folding;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.ModificationTracker;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Ids are only valid within the generation they were interned in, see getModificationCount
+public class FqnSymbolTable implements ModificationTracker {
+
+    private static final int INFO_CACHE_SIZE = 8192;
+    private static final int DISTINGUISHING_CACHE_SIZE = 2048;
+    private static final int MAX_NAMES = 1 << 18;
+
+    private String[] names = new String[1024];
+    private int[] hashes = new int[1024];
+    private int[] slots = new int[2048]; // id + 1, 0 for an empty slot
+    private int size;
+    private volatile long generation;
+    private final ReadWriteLock passLock = new ReentrantReadWriteLock();
+
+    private final Map<Integer, SymbolInfo> infoCache = new LruMap<>(INFO_CACHE_SIZE);
+    private final Map<IdSet, String[]> distinguishingCache = new LruMap<>(DISTINGUISHING_CACHE_SIZE);
+
+    public static FqnSymbolTable getInstance() {
+        return ApplicationManager.getApplication().getService(FqnSymbolTable.class);
+    }
+
+    // Ids handed out during the pass stay valid until it returns. Once the table has grown past its limit it is
+    // emptied between passes, and the new generation tells the caches holding ids to start over.
+    public <T> T computeInPass(Supplier<T> pass) {
+        passLock.readLock().lock();
+        try {
+            return pass.get();
+        } finally {
+            passLock.readLock().unlock();
+            clearIfFull();
+        }
+    }
+
+    private void clearIfFull() {
+        if (size() <= MAX_NAMES || !passLock.writeLock().tryLock()) { // Another pass is running, the next one clears
+            return;
+        }
+        try {
+            synchronized (this) {
+                names = new String[1024];
+                hashes = new int[1024];
+                slots = new int[2048];
+                size = 0;
+                infoCache.clear();
+                distinguishingCache.clear();
+                generation++;
+            }
+        } finally {
+            passLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getModificationCount() {
+        return generation;
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    public synchronized int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                int id = add(text.subSequence(start, end).toString(), hash);
+                slots[slot] = id + 1;
+                if (size * 2 > slots.length) {
+                    rehash();
+                }
+                return id;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && regionEquals(names[id], text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    public synchronized String getName(int id) {
+        return names[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public SymbolInfo getInfo(int id) {
+        synchronized (this) {
+            SymbolInfo info = infoCache.get(id);
+            if (info != null) {
+                return info;
+            }
+        }
+
+        String name = getName(id);
+        int simpleNameStart = QualifiedNameParser.simpleNameStart(name, 0, name.length());
+        SymbolInfo info = new SymbolInfo(simpleNameStart, intern(name, simpleNameStart, name.length()), segmentStarts(name));
+
+        synchronized (this) {
+            infoCache.put(id, info);
+        }
+        return info;
+    }
+
+    // Folded names for a sorted set of conflicting ids, shared by every file with the same conflict
+    public String[] getDistinguishingNames(int[] sortedIds, Function<int[], String[]> compute) {
+        IdSet key = new IdSet(sortedIds);
+        synchronized (this) {
+            String[] cached = distinguishingCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String[] names = compute.apply(sortedIds);
+
+        synchronized (this) {
+            distinguishingCache.put(key, names);
+        }
+        return names;
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    private static int[] segmentStarts(String name) {
+        int segments = 1;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '.') {
+                segments++;
+            }
+        }
+        int[] starts = new int[segments];
+        int segment = 1;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '.') {
+                starts[segment++] = i + 1;
+            }
+        }
+        return starts;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionEquals(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public record SymbolInfo(int simpleNameStart, int simpleNameId, int[] segmentStarts) {
+    }
+
+    private record IdSet(int[] ids) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdSet other && Arrays.equals(ids, other.ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(ids);
+        }
+    }
+
+    private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.psi.PsiImportList;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.util.Consumer;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+// Simple name -> qualified names a file writes out, whatever their length
+public class FqnUsageIndex extends FileBasedIndexExtension<String, Set<String>> implements PsiDependentIndex {
+
+    public static final ID<String, Set<String>> NAME = ID.create("io.wdsj.fqnfolder.qualifiedNames");
+
+    @NotNull
+    @Override
+    public ID<String, Set<String>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, Set<String>, FileContent> getIndexer() {
+        return inputData -> {
+            if (!(inputData.getPsiFile() instanceof PsiJavaFile javaFile)) {
+                return Collections.emptyMap();
+            }
+
+            // No resolve while indexing, static member accesses are told apart by syntax. The names go to a symbol
+            // table of this file only, indexing threads neither share the application table's lock nor grow it.
+            PsiImportList importList = javaFile.getImportList();
+            int[] candidateRuns = QualifiedNameParser.findDottedRuns(inputData.getContentAsText(),
+                    importList != null ? importList.getTextRange().getEndOffset() : 0, 0);
+            if (candidateRuns.length == 0) {
+                return Collections.emptyMap();
+            }
+
+            FqnSymbolTable symbols = new FqnSymbolTable();
+            QualifiedReferenceCollector collector = new QualifiedReferenceCollector(
+                    javaFile, 0, FoldingLevel.NO_STATIC_RESOLVE, 0, candidateRuns, symbols);
+            Int2ObjectMap<List<QualifiedReference>> qualifiedNames = new Int2ObjectOpenHashMap<>();
+            FoldingMetrics foldingMetrics = FoldingMetrics.getInstance();
+            FoldingMetrics.PassMetrics metrics = foldingMetrics.startPass(javaFile, javaFile.getTextLength(),
+                    FoldingMetrics.PassKind.INDEX);
+            metrics.fileCacheHit = false;
+            boolean completed = false;
+            try {
+                collector.collect(javaFile, qualifiedNames);
+                metrics.collectionNanos = System.nanoTime() - metrics.startNanos;
+                completed = true;
+            } finally {
+                foldingMetrics.finishPass(metrics, completed);
+            }
+
+            Map<String, Set<String>> result = new HashMap<>();
+            for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : qualifiedNames.int2ObjectEntrySet()) {
+                Set<String> names = new HashSet<>();
+                for (QualifiedReference ref : entry.getValue()) {
+                    names.add(symbols.getName(ref.fqnId()));
+                }
+                result.put(symbols.getName(entry.getIntKey()), names);
+                metrics.references += entry.getValue().size();
+            }
+            return result;
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<Set<String>> getValueExternalizer() {
+        return new DataExternalizer<>() {
+            @Override
+            public void save(@NotNull DataOutput out, Set<String> names) throws IOException {
+                DataInputOutputUtil.writeINT(out, names.size());
+                for (String name : names) {
+                    IOUtil.writeUTF(out, name);
+                }
+            }
+
+            @Override
+            public Set<String> read(@NotNull DataInput in) throws IOException {
+                int size = DataInputOutputUtil.readINT(in);
+                Set<String> names = new HashSet<>(size);
+                for (int i = 0; i < size; i++) {
+                    names.add(IOUtil.readUTF(in));
+                }
+                return names;
+            }
+        };
+    }
+
+    @Override
+    public int getVersion() {
+        return 3;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new SourceInputFilter();
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    // Project sources only, libraries and the JDK sources never fold in an editor the user types in
+    private static final class SourceInputFilter
+            implements FileBasedIndex.ProjectSpecificInputFilter, FileBasedIndex.FileTypeSpecificInputFilter {
+
+        @Override
+        public boolean acceptInput(@NotNull IndexedFile file) {
+            Project project = file.getProject();
+            return project != null && FileTypeRegistry.getInstance().isFileOfType(file.getFile(), JavaFileType.INSTANCE)
+                    && ProjectFileIndex.getInstance(project).isInSourceContent(file.getFile());
+        }
+
+        @Override
+        public void registerFileTypesUsedForIndexing(@NotNull Consumer<? super FileType> fileTypeSink) {
+            fileTypeSink.consume(JavaFileType.INSTANCE);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package io.wdsj.fqnfolder.folding;
+
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.*;
+
+// Path globs compiled into one automaton. The DFA states are built lazily from sets of glob positions, a path is
+// matched with one table lookup per character and without backtracking.
+public final class GlobMatcher {
+
+    private static final byte LITERAL = 0;
+    private static final byte SEGMENT_CHAR = 1; // ?
+    private static final byte SEGMENT_CHARS = 2; // *
+    private static final byte ANY_CHARS = 3; // **
+    private static final byte DIRECTORIES = 4; // **/ and the start of a glob without a slash, any directories or none
+    private static final byte ACCEPT = 5;
+    private static final int MAX_DFA_STATES = 4096;
+
+    private final byte[] kinds;
+    private final char[] chars;
+    private final BitSet starts = new BitSet();
+
+    private final List<BitSet> dfaStates = new ArrayList<>();
+    private final Map<BitSet, Integer> dfaIds = new HashMap<>();
+    private final BooleanArrayList accepting = new BooleanArrayList();
+    private final Long2IntMap transitions = new Long2IntOpenHashMap();
+    private int startState = -1;
+
+    public GlobMatcher(Collection<String> globs) {
+        StringBuilder kinds = new StringBuilder();
+        StringBuilder chars = new StringBuilder();
+        for (String glob : globs) {
+            starts.set(kinds.length());
+            compile(glob, kinds, chars);
+        }
+        this.kinds = new byte[kinds.length()];
+        for (int i = 0; i < this.kinds.length; i++) {
+            this.kinds[i] = (byte) kinds.charAt(i);
+        }
+        this.chars = chars.toString().toCharArray();
+        transitions.defaultReturnValue(-1);
+    }
+
+    private static void compile(String glob, StringBuilder kinds, StringBuilder chars) {
+        if (glob.indexOf('/') < 0) { // A file name glob matches in any directory
+            add(DIRECTORIES, ' ', kinds, chars);
+        }
+        for (int i = glob.startsWith("/") ? 1 : 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                    add(DIRECTORIES, ' ', kinds, chars);
+                    i += 2;
+                } else {
+                    add(ANY_CHARS, ' ', kinds, chars);
+                    i++;
+                }
+            } else if (c == '*') {
+                add(SEGMENT_CHARS, ' ', kinds, chars);
+            } else if (c == '?') {
+                add(SEGMENT_CHAR, ' ', kinds, chars);
+            } else {
+                add(LITERAL, c, kinds, chars);
+            }
+        }
+        add(ACCEPT, ' ', kinds, chars);
+    }
+
+    private static void add(byte kind, char c, StringBuilder kinds, StringBuilder chars) {
+        kinds.append((char) kind);
+        chars.append(c);
+    }
+
+    public synchronized boolean matches(CharSequence path) {
+        if (dfaStates.size() > MAX_DFA_STATES) { // Unusual globs over many paths, start the lazy DFA over
+            dfaStates.clear();
+            dfaIds.clear();
+            accepting.clear();
+            transitions.clear();
+            startState = -1;
+        }
+        if (startState < 0) {
+            startState = stateOf(closure((BitSet) starts.clone()));
+        }
+
+        int state = startState;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            long key = ((long) state << 16) | c;
+            int next = transitions.get(key);
+            if (next < 0) {
+                next = stateOf(step(dfaStates.get(state), c));
+                transitions.put(key, next);
+            }
+            state = next;
+        }
+        return accepting.getBoolean(state);
+    }
+
+    private int stateOf(BitSet positions) {
+        Integer id = dfaIds.get(positions);
+        if (id == null) {
+            id = dfaStates.size();
+            dfaStates.add(positions);
+            dfaIds.put(positions, id);
+            boolean accepts = false;
+            for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+                accepts |= kinds[p] == ACCEPT;
+            }
+            accepting.add(accepts);
+        }
+        return id;
+    }
+
+    private BitSet step(BitSet positions, char c) {
+        BitSet next = new BitSet(kinds.length);
+        for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+            switch (kinds[p]) {
+                case LITERAL -> {
+                    if (chars[p] == c) {
+                        next.set(p + 1);
+                    }
+                }
+                case SEGMENT_CHAR -> {
+                    if (c != '/') {
+                        next.set(p + 1);
+                    }
+                }
+                case SEGMENT_CHARS -> {
+                    if (c != '/') {
+                        next.set(p);
+                    }
+                }
+                case ANY_CHARS -> next.set(p);
+                case DIRECTORIES -> {
+                    next.set(p);
+                    if (c == '/') {
+                        next.set(p + 1);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return closure(next);
+    }
+
+    // The repeating positions may also match nothing. Skips only lead forward, so one pass in order is enough.
+    private BitSet closure(BitSet positions) {
+        for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+            byte kind = kinds[p];
+            if (kind == SEGMENT_CHARS || kind == ANY_CHARS || kind == DIRECTORIES) {
+                positions.set(p + 1);
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,209 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+public class IncrementalReferenceCollector {
+
+    private static final Key<MemberReferences> MEMBER_REFERENCES_KEY = Key.create("fqnfolder.memberReferences");
+
+    private final QualifiedReferenceCollector collector;
+    private final boolean parallel;
+
+    public IncrementalReferenceCollector(QualifiedReferenceCollector collector) {
+        this(collector, false);
+    }
+
+    public IncrementalReferenceCollector(QualifiedReferenceCollector collector, boolean parallel) {
+        this.collector = collector;
+        this.parallel = parallel;
+    }
+
+    public Int2ObjectMap<List<QualifiedReference>> collect(PsiJavaFile file) {
+        return collect(file, null);
+    }
+
+    // With a window, only the elements overlapping it are collected
+    public Int2ObjectMap<List<QualifiedReference>> collect(PsiJavaFile file, @Nullable TextRange window) {
+        List<PsiElement> units = new ArrayList<>();
+        for (PsiElement child : file.getChildren()) {
+            addUnits(child, window, units);
+        }
+
+        Int2ObjectMap<List<QualifiedReference>> qualifiedNames = new Int2ObjectOpenHashMap<>();
+        if (parallel) {
+            collectInParallel(units, qualifiedNames);
+            return qualifiedNames;
+        }
+        for (PsiElement unit : units) {
+            if (isMemberUnit(unit)) {
+                MemberReferences cached = findMemberReferences(unit);
+                if (cached == null) {
+                    Int2ObjectMap<List<QualifiedReference>> references = new Int2ObjectOpenHashMap<>();
+                    int refusedBefore = collector.getRefusedResolves();
+                    collector.collect(unit, references);
+                    storeMemberReferences(unit, references, refusedBefore);
+                    merge(references, qualifiedNames);
+                } else {
+                    merge(cached.references(), qualifiedNames);
+                }
+            } else {
+                collector.collect(unit, qualifiedNames);
+            }
+        }
+        return qualifiedNames;
+    }
+
+    // Class headers are cheap, only members are cached
+    private static void addUnits(PsiElement element, @Nullable TextRange window, List<PsiElement> units) {
+        if (window != null && !window.intersects(element.getTextRange())) {
+            return;
+        }
+        if (element instanceof PsiClass) {
+            for (PsiElement child : element.getChildren()) {
+                addUnits(child, window, units);
+            }
+        } else {
+            units.add(element);
+        }
+    }
+
+    // The syntax walk of uncached units runs concurrently, everything that may resolve then runs in document
+    // order on this thread. The result is the same as the sequential one.
+    private void collectInParallel(List<PsiElement> units, Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        MemberReferences[] cached = new MemberReferences[units.size()];
+        List<UnitCollection> pending = new ArrayList<>();
+        for (int i = 0; i < units.size(); i++) {
+            PsiElement unit = units.get(i);
+            cached[i] = isMemberUnit(unit) ? findMemberReferences(unit) : null;
+            if (cached[i] == null) {
+                pending.add(new UnitCollection(i, unit));
+            }
+        }
+
+        boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+                pending, ProgressManager.getGlobalProgressIndicator(), collection -> {
+                    collection.visited = collector.collectSyntax(collection.unit, collection.references, collection.deferred);
+                    return true;
+                });
+        if (!completed) {
+            throw new ProcessCanceledException();
+        }
+
+        FoldingMetrics.PassMetrics metrics = FoldingMetrics.current();
+        Iterator<UnitCollection> collections = pending.iterator();
+        UnitCollection next = collections.hasNext() ? collections.next() : null;
+        for (int i = 0; i < units.size(); i++) {
+            if (next == null || next.index != i) {
+                merge(cached[i].references(), qualifiedNames);
+                continue;
+            }
+            ProgressManager.checkCanceled();
+            int refusedBefore = collector.getRefusedResolves();
+            collector.classifyDeferred(next.deferred, next.references);
+            metrics.nodesVisited += next.visited;
+            if (isMemberUnit(next.unit)) {
+                storeMemberReferences(next.unit, next.references, refusedBefore);
+            }
+            merge(next.references, qualifiedNames);
+            next = collections.hasNext() ? collections.next() : null;
+        }
+    }
+
+    private static void merge(Int2ObjectMap<List<QualifiedReference>> from, Int2ObjectMap<List<QualifiedReference>> into) {
+        for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : from.int2ObjectEntrySet()) {
+            List<QualifiedReference> references = into.get(entry.getIntKey());
+            if (references == null) {
+                references = new ArrayList<>(entry.getValue().size());
+                into.put(entry.getIntKey(), references);
+            }
+            references.addAll(entry.getValue());
+        }
+    }
+
+    @Nullable
+    private MemberReferences findMemberReferences(PsiElement member) {
+        MemberReferences cached = member.getUserData(MEMBER_REFERENCES_KEY);
+        if (cached == null || cached.threshold() != collector.getThreshold()
+                || cached.level() != collector.getLevel() || cached.textLength() != member.getTextLength()
+                || cached.symbolGeneration() != collector.getSymbols().getModificationCount()) {
+            FoldingMetrics.current().memberCacheMisses++;
+            return null;
+        }
+
+        FoldingMetrics.current().memberCacheHits++;
+        int startOffset = member.getTextRange().getStartOffset();
+        if (cached.startOffset() == startOffset) {
+            return cached;
+        }
+        // Text before the member changed, only the offsets are stale
+        MemberReferences shifted = cached.shiftTo(startOffset);
+        member.putUserData(MEMBER_REFERENCES_KEY, shifted);
+        return shifted;
+    }
+
+    // Members that ran out of resolve budget are collected again by the next pass, which has a budget of its own
+    private void storeMemberReferences(PsiElement member, Int2ObjectMap<List<QualifiedReference>> references,
+                                       int refusedBefore) {
+        if (collector.getRefusedResolves() != refusedBefore) {
+            return;
+        }
+        MemberReferences collected = new MemberReferences(collector.getThreshold(), collector.getLevel(),
+                collector.getSymbols().getModificationCount(), member.getTextRange().getStartOffset(),
+                member.getTextLength(), references);
+        member.putUserData(MEMBER_REFERENCES_KEY, collected);
+    }
+
+    private static boolean isMemberUnit(PsiElement element) {
+        return element instanceof PsiMethod || element instanceof PsiField || element instanceof PsiClassInitializer;
+    }
+
+    public static void invalidate(@Nullable PsiElement changed) {
+        for (PsiElement element = changed; element != null && !(element instanceof PsiFile); element = element.getParent()) {
+            if (isMemberUnit(element)) {
+                element.putUserData(MEMBER_REFERENCES_KEY, null);
+            }
+        }
+    }
+
+    private static final class UnitCollection {
+
+        final int index;
+        final PsiElement unit;
+        final Int2ObjectMap<List<QualifiedReference>> references = new Int2ObjectOpenHashMap<>();
+        final List<PsiReferenceExpression> deferred = new ArrayList<>();
+        int visited;
+
+        UnitCollection(int index, PsiElement unit) {
+            this.index = index;
+            this.unit = unit;
+        }
+    }
+
+    private record MemberReferences(int threshold, FoldingLevel level, long symbolGeneration, int startOffset,
+                                    int textLength, Int2ObjectMap<List<QualifiedReference>> references) {
+
+        MemberReferences shiftTo(int newStartOffset) {
+            int delta = newStartOffset - startOffset;
+            Int2ObjectMap<List<QualifiedReference>> shifted = new Int2ObjectOpenHashMap<>();
+            for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : references.int2ObjectEntrySet()) {
+                List<QualifiedReference> refs = new ArrayList<>(entry.getValue().size());
+                for (QualifiedReference ref : entry.getValue()) {
+                    refs.add(new QualifiedReference(ref.node(), ref.range().shiftRight(delta), ref.fqnId()));
+                }
+                shifted.put(entry.getIntKey(), refs);
+            }
+            return new MemberReferences(threshold, level, symbolGeneration, newStartOffset, textLength, shifted);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.wdsj.fqnfolder.folding;
+
+import com.intellij.psi.PsiTreeChangeAdapter;
+import com.intellij.psi.PsiTreeChangeEvent;
+import org.jetbrains.annotations.NotNull;
+
+public class MemberReferenceInvalidator extends PsiTreeChangeAdapter {
+
+    @Override
+    public void childAdded(@NotNull PsiTreeChangeEvent event) {
+        IncrementalReferenceCollector.invalidate(event.getParent());
+    }
+
+    @Override
+    public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+        IncrementalReferenceCollector.invalidate(event.getParent());
+    }
+
+    @Override
+    public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+        IncrementalReferenceCollector.invalidate(event.getParent());
+    }
+
+    @Override
+    public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+        IncrementalReferenceCollector.invalidate(event.getParent());
+    }
+
+    @Override
+    public void childMoved(@NotNull PsiTreeChangeEvent event) {
+        IncrementalReferenceCollector.invalidate(event.getOldParent());
+        IncrementalReferenceCollector.invalidate(event.getNewParent());
+    }
+}
@@ -0,0 +1,52 @@
+package io.wdsj.fqnfolder.folding;
+
+import it.unimi.dsi.fastutil.chars.Char2ObjectMap;
+import it.unimi.dsi.fastutil.chars.Char2ObjectOpenHashMap;
+
+// Package prefixes by character, a lookup walks the name once
+public class PackagePrefixTrie {
+
+    private final Node root = new Node();
+    private boolean empty = true;
+
+    public void add(String packagePrefix) {
+        Node node = root;
+        for (int i = 0; i < packagePrefix.length(); i++) {
+            char c = packagePrefix.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        node.terminal = true;
+        empty = false;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    // Whether the name starts with one of the prefixes as whole segments, "com.foo" matches "com.foo.Bar"
+    // but not "com.foobar.Baz"
+    public boolean matches(CharSequence name) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '.' && node.terminal) {
+                return true;
+            }
+            node = node.children.get(c);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+
+    private static final class Node {
+        private final Char2ObjectMap<Node> children = new Char2ObjectOpenHashMap<>(2);
+        private boolean terminal;
+    }
+}
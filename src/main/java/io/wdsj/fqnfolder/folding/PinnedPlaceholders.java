@@ -0,0 +1,64 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.util.List;
+
+// Placeholders a file has already shown, by simple name and then by qualified name.
+// Callers synchronize on the instance.
+public final class PinnedPlaceholders {
+
+    private final long settingsStamp;
+    private final long symbolGeneration;
+    private final Int2ObjectMap<Int2ObjectMap<String>> groups = new Int2ObjectOpenHashMap<>();
+
+    public PinnedPlaceholders(long settingsStamp, long symbolGeneration) {
+        this.settingsStamp = settingsStamp;
+        this.symbolGeneration = symbolGeneration;
+    }
+
+    public long getSettingsStamp() {
+        return settingsStamp;
+    }
+
+    public long getSymbolGeneration() {
+        return symbolGeneration;
+    }
+
+    public Int2ObjectMap<String> getGroup(int simpleNameId) {
+        Int2ObjectMap<String> group = groups.get(simpleNameId);
+        if (group == null) {
+            group = new Int2ObjectOpenHashMap<>();
+            groups.put(simpleNameId, group);
+        }
+        return group;
+    }
+
+    // Forgets the placeholders of qualified names the file no longer has
+    public void retainNames(Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        ObjectIterator<Int2ObjectMap.Entry<Int2ObjectMap<String>>> groupIterator = groups.int2ObjectEntrySet().iterator();
+        while (groupIterator.hasNext()) {
+            Int2ObjectMap.Entry<Int2ObjectMap<String>> entry = groupIterator.next();
+            List<QualifiedReference> references = qualifiedNames.get(entry.getIntKey());
+            if (references == null) {
+                groupIterator.remove();
+                continue;
+            }
+
+            IntSet fqnIds = new IntOpenHashSet(references.size());
+            for (QualifiedReference reference : references) {
+                fqnIds.add(reference.fqnId());
+            }
+            Int2ObjectMap<String> group = entry.getValue();
+            group.keySet().retainAll(fqnIds);
+            if (group.isEmpty()) {
+                groupIterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.wdsj.fqnfolder.folding;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.IndexNotReadyException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.FileBasedIndex;
+import it.unimi.dsi.fastutil.ints.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Set;
+
+// Qualified names the whole project uses, by simple name, read from FqnUsageIndex
+public class ProjectFqnNames implements ModificationTracker {
+
+    private static final long DUMB_STAMP = -1;
+
+    private final Project project;
+    private final FqnSymbolTable symbols = FqnSymbolTable.getInstance();
+    private final Int2ObjectMap<int[]> qualifiedNameIds = new Int2ObjectOpenHashMap<>();
+    private long indexStamp = -1;
+    private long symbolGeneration = -1;
+
+    public ProjectFqnNames(Project project) {
+        this.project = project;
+    }
+
+    public static ProjectFqnNames getInstance(Project project) {
+        return project.getService(ProjectFqnNames.class);
+    }
+
+    // Sorted qualified name ids for each simple name id, null while the index is not available
+    @Nullable
+    public Int2ObjectMap<int[]> getQualifiedNameIds(IntCollection simpleNameIds) {
+        if (DumbService.isDumb(project)) {
+            return null;
+        }
+
+        long stamp = getModificationCount();
+        long generation = symbols.getModificationCount(); // Cannot change, callers are inside a pass
+        Int2ObjectMap<int[]> result = new Int2ObjectOpenHashMap<>(simpleNameIds.size());
+        IntList missing = new IntArrayList();
+        synchronized (qualifiedNameIds) {
+            if (indexStamp != stamp || symbolGeneration != generation) {
+                qualifiedNameIds.clear();
+                indexStamp = stamp;
+                symbolGeneration = generation;
+            }
+            for (int simpleNameId : simpleNameIds) {
+                int[] ids = qualifiedNameIds.get(simpleNameId);
+                if (ids != null) {
+                    result.put(simpleNameId, ids);
+                } else {
+                    missing.add(simpleNameId);
+                }
+            }
+        }
+
+        // Looked up outside the lock, the index may have to catch up with edited files first
+        for (int simpleNameId : missing) {
+            int[] ids = query(simpleNameId);
+            result.put(simpleNameId, ids);
+            synchronized (qualifiedNameIds) {
+                if (indexStamp == stamp && symbolGeneration == generation) {
+                    qualifiedNameIds.put(simpleNameId, ids);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int[] query(int simpleNameId) {
+        IntSet ids = new IntOpenHashSet();
+        for (Set<String> names : FileBasedIndex.getInstance().getValues(
+                FqnUsageIndex.NAME, symbols.getName(simpleNameId), GlobalSearchScope.projectScope(project))) {
+            for (String name : names) {
+                ids.add(symbols.intern(name));
+            }
+        }
+        int[] sorted = ids.toIntArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // While indexing, folds computed without the index are invalidated by the DumbService tracker instead
+    @Override
+    public long getModificationCount() {
+        if (DumbService.isDumb(project)) {
+            return DUMB_STAMP;
+        }
+        try {
+            return FileBasedIndex.getInstance().getIndexModificationStamp(FqnUsageIndex.NAME, project);
+        } catch (IndexNotReadyException e) { // Indexing started since the check
+            return DUMB_STAMP;
+        }
+    }
+}
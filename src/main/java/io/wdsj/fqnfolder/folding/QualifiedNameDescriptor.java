@@ -0,0 +1,24 @@
+package io.wdsj.fqnfolder.folding;
+
+import com.intellij.lang.folding.FoldingDescriptor;
+import com.intellij.openapi.util.TextRange;
+import org.jetbrains.annotations.NotNull;
+
+// Every fold stands alone, so no FoldingGroup is needed
+public class QualifiedNameDescriptor extends FoldingDescriptor {
+
+    private final FoldedNames foldedNames;
+    private final int index;
+
+    public QualifiedNameDescriptor(FoldedNames foldedNames, int index) {
+        super(foldedNames.getNode(index), new TextRange(foldedNames.getStartOffset(index), foldedNames.getEndOffset(index)), null);
+        this.foldedNames = foldedNames;
+        this.index = index;
+    }
+
+    @NotNull
+    @Override
+    public String getPlaceholderText() {
+        return foldedNames.getPlaceholder(index);
+    }
+}
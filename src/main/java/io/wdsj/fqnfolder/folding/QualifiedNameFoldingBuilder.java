@@ -5,287 +5,273 @@ import com.intellij.lang.ASTNode;
 import com.intellij.lang.folding.FoldingBuilderEx;
 import com.intellij.lang.folding.FoldingDescriptor;
 import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.FoldingGroup;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.*;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import it.unimi.dsi.fastutil.ints.Int2BooleanMap;
+import it.unimi.dsi.fastutil.ints.Int2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
-public class QualifiedNameFoldingBuilder extends FoldingBuilderEx {
+public class QualifiedNameFoldingBuilder extends FoldingBuilderEx implements DumbAware {
+
+    private static final Key<CachedValue<FoldedNames>> FOLDED_NAMES_KEY =
+            Key.create("fqnfolder.foldedNames");
+    private static final Key<CachedValue<FoldedNames>> QUICK_FOLDED_NAMES_KEY =
+            Key.create("fqnfolder.quickFoldedNames");
+    private static final Key<PreviousFolds> PREVIOUS_FOLDS_KEY = Key.create("fqnfolder.previousFolds");
+    private static final Key<Long> WHOLE_FILE_FOLDED_KEY = Key.create("fqnfolder.wholeFileFolded");
 
     @NotNull
     @Override
     public FoldingDescriptor[] buildFoldRegions(@NotNull PsiElement root,
                                                 @NotNull Document document,
                                                 boolean quick) {
-        if (!(root instanceof PsiJavaFile)) {
+        if (!(root instanceof PsiJavaFile javaFile)) {
             return FoldingDescriptor.EMPTY_ARRAY;
         }
 
         PluginSettings settings = PluginSettings.getInstance();
-        if (!settings.isEnabled()) {
+        if (!settings.isEnabled() || ExclusionFilter.getInstance(settings).isExcluded(javaFile)) {
             return FoldingDescriptor.EMPTY_ARRAY;
         }
 
-        List<FoldingDescriptor> descriptors = new ArrayList<>();
-        Map<String, List<QualifiedReference>> qualifiedNames = new HashMap<>();
-
-        collectQualifiedReferences(root, qualifiedNames, settings.getFoldingThreshold());
-
-        FoldingConflictResolver resolver = new FoldingConflictResolver();
-        Map<QualifiedReference, String> foldedNames = resolver.resolveConflicts(qualifiedNames);
-
-        for (Map.Entry<QualifiedReference, String> entry : foldedNames.entrySet()) {
-            QualifiedReference ref = entry.getKey();
-            String foldedName = entry.getValue();
-
-            FoldingGroup group = FoldingGroup.newGroup("qualified-name");
-            descriptors.add(new FoldingDescriptor(ref.node, ref.range, group) {
-                @Nullable
-                @Override
-                public String getPlaceholderText() {
-                    return foldedName;
-                }
-            });
+        if (FoldingDegradation.levelFor(javaFile, document, settings) == FoldingLevel.DISABLED) {
+            return FoldingDescriptor.EMPTY_ARRAY;
         }
 
-        return descriptors.toArray(FoldingDescriptor.EMPTY_ARRAY);
-    }
-
-    private void collectQualifiedReferences(PsiElement element,
-                                            Map<String, List<QualifiedReference>> qualifiedNames,
-                                            int threshold) {
-        switch (element) {
-            case PsiTypeElement typeElement -> {
-                processTypeElement(typeElement, qualifiedNames, threshold);
-            }
-            case PsiNewExpression newExpression -> {
-                processNewExpression(newExpression, qualifiedNames, threshold);
+        FoldingMetrics foldingMetrics = FoldingMetrics.getInstance();
+        FoldingMetrics.PassMetrics metrics = foldingMetrics.startPass(javaFile, document.getTextLength());
+        FoldingEvents.FoldPass event = new FoldingEvents.FoldPass();
+        event.begin();
+        boolean completed = false;
+        try {
+            FoldingDescriptor[] descriptors = buildFoldRegions(javaFile, document, settings, quick);
+            metrics.descriptors = descriptors.length;
+            completed = true;
+            // Passes during indexing compete with the indexer and say little about the file
+            if (!quick && !metrics.fileCacheHit && !DumbService.isDumb(javaFile.getProject())) {
+                FoldingDegradation.recordPass(javaFile, System.nanoTime() - metrics.startNanos, settings);
             }
-            case PsiTypeCastExpression typeCast -> {
-                PsiTypeElement castType = typeCast.getCastType();
-                if (castType != null) {
-                    processTypeElement(castType, qualifiedNames, threshold);
-                }
-            }
-            case PsiInstanceOfExpression instanceOf -> {
-                PsiTypeElement checkType = instanceOf.getCheckType();
-                if (checkType != null) {
-                    processTypeElement(checkType, qualifiedNames, threshold);
-                }
+            return descriptors;
+        } finally {
+            foldingMetrics.finishPass(metrics, completed);
+            event.end();
+            if (event.shouldCommit()) {
+                event.filePath = metrics.filePath;
+                event.fileLength = metrics.fileLength;
+                event.quick = quick;
+                event.references = metrics.references;
+                event.descriptors = metrics.descriptors;
+                event.cancelled = !completed;
+                event.commit();
             }
-            case PsiReferenceExpression refExpr -> {
-                processReferenceExpression(refExpr, qualifiedNames, threshold);
-            }
-            case PsiReferenceList refList -> {
-                if (refList.getParent() instanceof PsiClass) {
-                    processReferenceList(refList, qualifiedNames, threshold);
-                }
-            }
-            default -> {
-            }
-        }
-
-        for (PsiElement child : element.getChildren()) {
-            collectQualifiedReferences(child, qualifiedNames, threshold);
         }
     }
 
-    private void processReferenceList(PsiReferenceList refList,
-                                      Map<String, List<QualifiedReference>> qualifiedNames,
-                                      int threshold) { // Handle extends and implements
-        for (PsiJavaCodeReferenceElement ref : refList.getReferenceElements()) {
-            String text = ref.getText();
+    private static FoldingDescriptor[] buildFoldRegions(PsiJavaFile javaFile, Document document,
+                                                        PluginSettings settings, boolean quick) {
+        FoldedNames foldedNames = findFoldedNames(javaFile);
+        if (foldedNames == null) {
+            // Only until the whole file has been folded once. From then on the member caches keep full passes cheap,
+            // and a window would drop every fold outside of it until the fill is done.
+            ViewportFolding viewportFolding = ViewportFolding.getInstance();
+            TextRange window = hasFoldedWholeFile(javaFile, settings)
+                    ? null
+                    : viewportFolding.findWindow(javaFile, document, settings);
+            if (window != null) { // Fold what the editors show now, the whole file comes with the fill
+                foldedNames = computeFoldedNames(javaFile, settings, quick, window);
+                viewportFolding.scheduleFill(javaFile, window);
+            } else {
+                foldedNames = quick ? getQuickFoldedNames(javaFile, settings) : getFoldedNames(javaFile, settings);
+            }
+        }
 
-            int genericStart = text.indexOf('<');
-            String mainType = genericStart > 0 ? text.substring(0, genericStart).trim() : text;
+        FoldingMetrics.current().retainedBytes = foldedNames.estimateRetainedBytes();
 
-            if (mainType.contains(".") && mainType.length() > threshold) {
-                String simpleName = getSimpleName(mainType);
-                if (mainType.equals(simpleName)) {
-                    continue;
-                }
+        // Same folds as last time, hand out the same descriptors so the editor has nothing to update
+        PreviousFolds previous = javaFile.getUserData(PREVIOUS_FOLDS_KEY);
+        if (previous != null && previous.foldedNames().isSameAs(foldedNames)) {
+            return previous.descriptors();
+        }
 
-                TextRange refRange = ref.getTextRange();
-                TextRange adjustedRange = genericStart > 0
-                        ? new TextRange(refRange.getStartOffset(), refRange.getStartOffset() + genericStart)
-                        : refRange;
-
-                QualifiedReference qRef = new QualifiedReference(
-                        ref.getNode(),
-                        adjustedRange,
-                        mainType
-                );
-                qualifiedNames.computeIfAbsent(simpleName, k -> new ArrayList<>()).add(qRef);
-            }
+        FoldingDescriptor[] descriptors = new FoldingDescriptor[foldedNames.size()];
+        for (int i = 0; i < descriptors.length; i++) {
+            descriptors[i] = new QualifiedNameDescriptor(foldedNames, i);
         }
+        javaFile.putUserData(PREVIOUS_FOLDS_KEY, new PreviousFolds(foldedNames, descriptors));
+        return descriptors;
     }
 
-    private void processReferenceExpression(PsiReferenceExpression refExpr,
-                                            Map<String, List<QualifiedReference>> qualifiedNames,
-                                            int threshold) {
-        String fullText = refExpr.getText();
+    private static FoldedNames getFoldedNames(PsiJavaFile javaFile, PluginSettings settings) {
+        // Reused until the file, the plugin settings, the file's folding level, the project's names or dumb mode change
+        return CachedValuesManager.getCachedValue(javaFile, FOLDED_NAMES_KEY, () -> {
+            FoldedNames foldedNames = computeFoldedNames(javaFile, settings, false, null);
+            javaFile.putUserData(WHOLE_FILE_FOLDED_KEY, settings.getModificationCount());
+            ViewportFolding.dropPins(javaFile);
+            return CachedValueProvider.Result.create(foldedNames,
+                    javaFile, settings, FoldingDegradation.getState(javaFile), projectNamesTracker(javaFile, settings),
+                    DumbService.getInstance(javaFile.getProject()).getModificationTracker());
+        });
+    }
 
-        if (!fullText.contains(".")) {
-            return;
-        }
+    // Settings changes drop the member caches, the file is then folded by window again
+    private static boolean hasFoldedWholeFile(PsiJavaFile javaFile, PluginSettings settings) {
+        Long settingsStamp = javaFile.getUserData(WHOLE_FILE_FOLDED_KEY);
+        return settingsStamp != null && settingsStamp == settings.getModificationCount();
+    }
 
-        PsiExpression qualifier = refExpr.getQualifierExpression();
-        if (qualifier == null) {
-            return;
-        }
+    @Nullable
+    private static FoldedNames findFoldedNames(PsiJavaFile javaFile) {
+        CachedValue<FoldedNames> resolved = javaFile.getUserData(FOLDED_NAMES_KEY);
+        return resolved != null && resolved.hasUpToDateValue() ? resolved.getValue() : null;
+    }
 
-        if (!qualifier.textContains('.')) return;
+    private static FoldedNames getQuickFoldedNames(PsiJavaFile javaFile, PluginSettings settings) {
+        // Syntax only, the next full pass corrects the static member folds
+        return CachedValuesManager.getCachedValue(javaFile, QUICK_FOLDED_NAMES_KEY, () ->
+                CachedValueProvider.Result.create(computeFoldedNames(javaFile, settings, true, null),
+                        javaFile, settings, FoldingDegradation.getState(javaFile), projectNamesTracker(javaFile, settings),
+                        DumbService.getInstance(javaFile.getProject()).getModificationTracker()));
+    }
 
-        String qualifierText = qualifier.getText();
+    // Folds computed while indexing did not use the project's names, leaving dumb mode invalidates them
+    private static ModificationTracker projectNamesTracker(PsiJavaFile javaFile, PluginSettings settings) {
+        return settings.isProjectWideNames() && !DumbService.isDumb(javaFile.getProject())
+                ? ProjectFqnNames.getInstance(javaFile.getProject())
+                : ModificationTracker.NEVER_CHANGED;
+    }
 
-        if (!isClassReference(qualifier)) {
+    // Fills the file cache ahead of the next fold pass
+    static void precomputeFoldedNames(PsiJavaFile javaFile) {
+        PluginSettings settings = PluginSettings.getInstance();
+        if (!settings.isEnabled() || ExclusionFilter.getInstance(settings).isExcluded(javaFile)
+                || FoldingDegradation.currentLevel(javaFile, settings) == FoldingLevel.DISABLED) {
             return;
         }
 
-        if (qualifierText.length() <= threshold) {
-            return;
+        FoldingMetrics foldingMetrics = FoldingMetrics.getInstance();
+        FoldingMetrics.PassMetrics metrics = foldingMetrics.startPass(javaFile, javaFile.getTextLength(),
+                FoldingMetrics.PassKind.BACKGROUND);
+        boolean completed = false;
+        try {
+            getFoldedNames(javaFile, settings);
+            completed = !metrics.fileCacheHit; // Only the computations are worth recording
+        } finally {
+            foldingMetrics.finishPass(metrics, completed);
         }
+    }
 
-        PsiElement resolved = refExpr.resolve();
-        if (resolved instanceof PsiField || resolved instanceof PsiMethod) {
-            PsiModifierListOwner modifierListOwner = (PsiModifierListOwner) resolved;
-
-            if (modifierListOwner.hasModifierProperty(PsiModifier.STATIC)) {
-                String simpleName = getSimpleName(qualifierText);
-                if (qualifierText.equals(simpleName)) {
-                    return;
-                }
+    private static FoldedNames computeFoldedNames(PsiJavaFile javaFile, PluginSettings settings,
+                                                  boolean quick, @Nullable TextRange window) {
+        // The result holds placeholder strings only, no symbol ids outlive the pass
+        return FqnSymbolTable.getInstance().computeInPass(() -> doComputeFoldedNames(javaFile, settings, quick, window));
+    }
 
-                TextRange qualifierRange = qualifier.getTextRange();
+    private static FoldedNames doComputeFoldedNames(PsiJavaFile javaFile, PluginSettings settings,
+                                                    boolean quick, @Nullable TextRange window) {
+        FoldingMetrics.PassMetrics metrics = FoldingMetrics.current();
+        metrics.fileCacheHit = false;
+        long collectionStart = System.nanoTime();
+        long resolveBefore = metrics.resolveNanos;
 
-                QualifiedReference qRef = new QualifiedReference(
-                        qualifier.getNode(),
-                        qualifierRange,
-                        qualifierText
-                );
-                qualifiedNames.computeIfAbsent(simpleName, k -> new ArrayList<>()).add(qRef);
-            }
+        FoldingLevel level = FoldingDegradation.currentLevel(javaFile, settings);
+        if (quick) {
+            level = level.atLeast(FoldingLevel.NO_STATIC_RESOLVE);
         }
-    }
-
-    private boolean isClassReference(PsiExpression expr) {
-        if (!(expr instanceof PsiReferenceExpression refExpr)) {
-            return false;
+        if (DumbService.isDumb(javaFile.getProject())) { // Nothing resolves while indexing, upgraded once it is done
+            level = level.atLeast(FoldingLevel.NO_STATIC_RESOLVE);
+            FoldingRefresher.markFoldedWhileDumb(javaFile.getProject());
         }
-
-        PsiElement resolved = refExpr.resolve();
-
-        if (resolved instanceof PsiClass) {
-            return true;
+        // Cheap scan of the text after the imports, most files have no name long enough to fold
+        PsiImportList importList = javaFile.getImportList();
+        int[] candidateRuns = QualifiedNameParser.findDottedRuns(javaFile.getViewProvider().getContents(),
+                importList != null ? importList.getTextRange().getEndOffset() : 0, settings.getFoldingThreshold());
+        if (candidateRuns.length == 0) {
+            metrics.collectionNanos += System.nanoTime() - collectionStart;
+            return FoldedNames.EMPTY;
         }
 
-        String text = expr.getText();
-        if (text.contains(".")) {
-            String[] parts = text.split("\\.");
-            if (parts.length > 0) {
-                String lastPart = parts[parts.length - 1];
-                return !lastPart.isEmpty() && Character.isUpperCase(lastPart.charAt(0));
-            }
+        QualifiedReferenceCollector collector = new QualifiedReferenceCollector(
+                javaFile, settings.getFoldingThreshold(), level, settings.getResolveBudget(), candidateRuns);
+
+        Int2ObjectMap<List<QualifiedReference>> qualifiedNames;
+        if (settings.isIncrementalFolding() && javaFile.isPhysical()) { // Member caches rely on PSI change events
+            Document document = javaFile.getViewProvider().getDocument();
+            boolean parallel = settings.isParallelCollection() && document != null
+                    && document.getLineCount() > settings.getParallelCollectionLines();
+            qualifiedNames = new IncrementalReferenceCollector(collector, parallel).collect(javaFile, window);
+        } else {
+            qualifiedNames = new Int2ObjectOpenHashMap<>();
+            collector.collect(javaFile, qualifiedNames);
         }
 
-        return false;
-    }
-
-    private void processTypeElement(PsiTypeElement typeElement,
-                                    Map<String, List<QualifiedReference>> qualifiedNames,
-                                    int threshold) {
-        PsiType type = typeElement.getType();
-        if (type instanceof PsiWildcardType) { // Don't handle wildcard types, let them be handled by the recursion
-            return;
+        // Dropped after collection so the member caches and the index stay independent of the exclusions
+        ExclusionFilter exclusions = ExclusionFilter.getInstance(settings);
+        if (exclusions.hasExcludedPackages()) {
+            qualifiedNames = withoutExcludedPackages(qualifiedNames, exclusions);
         }
-        String typeText = typeElement.getText();
 
-        int genericStart = typeText.indexOf('<');
-        String mainType = genericStart > 0 ? typeText.substring(0, genericStart).trim() : typeText;
+        metrics.collectionNanos += System.nanoTime() - collectionStart - (metrics.resolveNanos - resolveBefore);
+        for (List<QualifiedReference> references : qualifiedNames.values()) {
+            metrics.references += references.size();
+        }
 
-        if (mainType.contains(".") && mainType.length() > threshold && !isArrayType(mainType)) {
-            String simpleName = getSimpleName(mainType);
-            if (mainType.equals(simpleName)) {
-                return;
+        long conflictStart = System.nanoTime();
+        FoldingConflictResolver resolver = new FoldingConflictResolver();
+        // Pins only keep window passes and the fill in agreement, nothing is folded by window after the fill
+        PinnedPlaceholders pins = hasFoldedWholeFile(javaFile, settings)
+                ? null
+                : ViewportFolding.findPins(javaFile, settings);
+        if (pins != null && window == null) {
+            synchronized (pins) {
+                pins.retainNames(qualifiedNames);
             }
-
-            TextRange typeRange = typeElement.getTextRange();
-            TextRange adjustedRange = genericStart > 0
-                    ? new TextRange(typeRange.getStartOffset(), typeRange.getStartOffset() + genericStart)
-                    : typeRange;
-
-            QualifiedReference qRef = new QualifiedReference(
-                    typeElement.getNode(),
-                    adjustedRange,
-                    mainType
-            );
-            qualifiedNames.computeIfAbsent(simpleName, k -> new ArrayList<>()).add(qRef);
         }
+        Int2ObjectMap<int[]> knownNames = settings.isProjectWideNames()
+                ? ProjectFqnNames.getInstance(javaFile.getProject()).getQualifiedNameIds(qualifiedNames.keySet())
+                : null;
+        FoldedNames foldedNames = FoldedNames.of(resolver.resolveConflicts(qualifiedNames, pins, knownNames));
+        metrics.conflictNanos += System.nanoTime() - conflictStart;
+        return foldedNames;
     }
 
-    private void processNewExpression(PsiNewExpression newExpression,
-                                      Map<String, List<QualifiedReference>> qualifiedNames,
-                                      int threshold) {
-        PsiJavaCodeReferenceElement classReference = newExpression.getClassReference();
-        if (classReference != null) {
-            String text = classReference.getText();
-
-            int genericStart = text.indexOf('<');
-            String mainType = genericStart > 0 ? text.substring(0, genericStart).trim() : text;
-
-            if (mainType.contains(".") && mainType.length() > threshold) {
-                String simpleName = getSimpleName(mainType);
-                if (mainType.equals(simpleName)) {
-                    return;
+    private static Int2ObjectMap<List<QualifiedReference>> withoutExcludedPackages(
+            Int2ObjectMap<List<QualifiedReference>> qualifiedNames, ExclusionFilter exclusions) {
+        FqnSymbolTable symbols = FqnSymbolTable.getInstance();
+        Int2BooleanMap excluded = new Int2BooleanOpenHashMap(); // Each name is looked up once per pass
+        Int2ObjectMap<List<QualifiedReference>> result = new Int2ObjectOpenHashMap<>(qualifiedNames.size());
+        for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : qualifiedNames.int2ObjectEntrySet()) {
+            List<QualifiedReference> kept = new ArrayList<>(entry.getValue().size());
+            for (QualifiedReference reference : entry.getValue()) {
+                int fqnId = reference.fqnId();
+                boolean isExcluded;
+                if (excluded.containsKey(fqnId)) {
+                    isExcluded = excluded.get(fqnId);
+                } else {
+                    isExcluded = exclusions.isExcludedName(symbols.getName(fqnId));
+                    excluded.put(fqnId, isExcluded);
+                }
+                if (!isExcluded) {
+                    kept.add(reference);
                 }
-
-                TextRange refRange = classReference.getTextRange();
-                TextRange adjustedRange = genericStart > 0
-                        ? new TextRange(refRange.getStartOffset(), refRange.getStartOffset() + genericStart)
-                        : refRange;
-
-                QualifiedReference qRef = new QualifiedReference(
-                        classReference.getNode(),
-                        adjustedRange,
-                        mainType
-                );
-                qualifiedNames.computeIfAbsent(simpleName, k -> new ArrayList<>()).add(qRef);
             }
-        }
-    }
-
-    private boolean isArrayType(String type) {
-        return type.contains("[") || type.contains("]");
-    }
-
-    private boolean isCommonPackageName(String name) {
-        return name.equals(name.toLowerCase()) || name.equals("lang") || name.equals("javax") || name.equals("awt");
-    }
-
-    private String getSimpleName(String qualifiedName) {
-        String[] parts = qualifiedName.split("\\.");
-        if (parts.length == 0) {
-            return qualifiedName;
-        }
-
-        String effectiveSimpleName = parts[parts.length - 1];
-
-        for (int i = parts.length - 2; i >= 0; i--) {
-            String potentialOuter = parts[i];
-
-            if (!potentialOuter.isEmpty() &&
-                    Character.isUpperCase(potentialOuter.charAt(0)) &&
-                    !isCommonPackageName(potentialOuter)) {
-                effectiveSimpleName = potentialOuter + "." + effectiveSimpleName;
-            } else {
-                break;
+            if (!kept.isEmpty()) {
+                result.put(entry.getIntKey(), kept);
             }
         }
-
-        return effectiveSimpleName;
+        return result;
     }
 
     @Nullable
@@ -299,6 +285,9 @@ public class QualifiedNameFoldingBuilder extends FoldingBuilderEx {
         return true;
     }
 
-    public record QualifiedReference(ASTNode node, TextRange range, String qualifiedName) {
+    public record QualifiedReference(ASTNode node, TextRange range, int fqnId) {
+    }
+
+    private record PreviousFolds(FoldedNames foldedNames, FoldingDescriptor[] descriptors) {
     }
 }
\ No newline at end of file
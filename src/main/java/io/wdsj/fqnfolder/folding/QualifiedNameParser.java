@@ -0,0 +1,181 @@
+package io.wdsj.fqnfolder.folding;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Collection;
+
+public final class QualifiedNameParser {
+
+    private QualifiedNameParser() {
+    }
+
+    public static int genericStart(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '<') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static int trimEnd(CharSequence text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    public static boolean contains(CharSequence text, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static boolean isArrayType(CharSequence text, int start, int end) {
+        return contains(text, start, end, '[') || contains(text, start, end, ']');
+    }
+
+    public static int lastSegmentStart(CharSequence text, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (text.charAt(i) == '.') {
+                return i + 1;
+            }
+        }
+        return start;
+    }
+
+    public static boolean lastSegmentStartsUppercase(CharSequence text, int start, int end) {
+        int segmentStart = lastSegmentStart(text, start, end);
+        return segmentStart < end && Character.isUpperCase(text.charAt(segmentStart));
+    }
+
+    // Start of the simple name including its outer classes, e.g. Map.Entry for java.util.Map.Entry
+    public static int simpleNameStart(CharSequence text, int start, int end) {
+        int simpleNameStart = lastSegmentStart(text, start, end);
+
+        while (simpleNameStart > start) {
+            int outerEnd = simpleNameStart - 1;
+            int outerStart = lastSegmentStart(text, start, outerEnd);
+
+            if (outerStart < outerEnd &&
+                    Character.isUpperCase(text.charAt(outerStart)) &&
+                    !isCommonPackageName(text, outerStart, outerEnd)) {
+                simpleNameStart = outerStart;
+            } else {
+                break;
+            }
+        }
+
+        return simpleNameStart;
+    }
+
+    public static boolean startsWithSegment(CharSequence text, int start, int end, Collection<String> segments) {
+        int dot = start;
+        while (dot < end && text.charAt(dot) != '.') {
+            dot++;
+        }
+        int segmentEnd = trimEnd(text, start, dot);
+        for (String segment : segments) {
+            if (segment.length() == segmentEnd - start && regionMatches(text, start, segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Start and end offsets of identifier runs joined by dots that are longer than the threshold.
+    // A superset of what can fold: every folded name lies inside one of them.
+    public static int[] findDottedRuns(CharSequence text, int from, int threshold) {
+        IntArrayList runs = new IntArrayList();
+        int length = text.length();
+        int i = from;
+        while (i < length) {
+            if (!Character.isJavaIdentifierStart(text.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            int start = i;
+            i = skipIdentifier(text, i);
+            int end = i;
+            while (true) {
+                int dot = skipWhitespace(text, i);
+                if (dot >= length || text.charAt(dot) != '.') {
+                    break;
+                }
+                int next = skipWhitespace(text, dot + 1);
+                if (next >= length || !Character.isJavaIdentifierStart(text.charAt(next))) {
+                    break;
+                }
+                i = skipIdentifier(text, next);
+                end = i;
+            }
+
+            if (end - start > threshold && contains(text, start, end, '.')) {
+                runs.add(start);
+                runs.add(end);
+            }
+        }
+        return runs.toIntArray();
+    }
+
+    // Whether [start, end) overlaps one of the sorted runs
+    public static boolean overlapsRun(int[] runs, int start, int end) {
+        int low = 0;
+        int high = runs.length / 2;
+        while (low < high) { // First run ending after start
+            int mid = (low + high) >>> 1;
+            if (runs[2 * mid + 1] <= start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < runs.length / 2 && runs[2 * low] < end;
+    }
+
+    private static int skipIdentifier(CharSequence text, int i) {
+        while (i < text.length() && Character.isJavaIdentifierPart(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(CharSequence text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isCommonPackageName(CharSequence text, int start, int end) {
+        return isLowerCase(text, start, end) || regionEquals(text, start, end, "lang") ||
+                regionEquals(text, start, end, "javax") || regionEquals(text, start, end, "awt");
+    }
+
+    private static boolean isLowerCase(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.toLowerCase(c) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, int end, String value) {
+        return end - start == value.length() && regionMatches(text, start, value);
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (text.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,429 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.source.tree.JavaDocElementType;
+import com.intellij.psi.impl.source.tree.JavaElementType;
+import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+import static io.wdsj.fqnfolder.folding.QualifiedNameParser.*;
+
+public class QualifiedReferenceCollector {
+
+    // Imports and the package statement only hold code references, doc comments and literals hold none
+    private static final TokenSet SKIPPED_SUBTREES = TokenSet.create(JavaElementType.IMPORT_LIST,
+            JavaElementType.PACKAGE_STATEMENT, JavaDocElementType.DOC_COMMENT, JavaElementType.LITERAL_EXPRESSION);
+    private static final TokenSet REFERENCE_LISTS = TokenSet.create(JavaElementType.EXTENDS_LIST,
+            JavaElementType.IMPLEMENTS_LIST, JavaElementType.PERMITS_LIST, JavaElementType.EXTENDS_BOUND_LIST);
+    private static final Set<String> WELL_KNOWN_PACKAGE_ROOTS = Set.of("java", "javax", "jakarta", "com", "org", "net", "io");
+
+    private final FqnSymbolTable symbols;
+    private final PsiJavaFile file;
+    private final CharSequence text; // Committed file text, references are parsed by offsets into it
+    private final int threshold;
+    private final FoldingLevel level;
+    @Nullable
+    private final int[] candidateRuns; // From the pre-scan, subtrees outside of them are skipped
+    private int resolveBudget;
+    private int refusedResolves;
+    private Set<String> packageRoots; // Built on the first syntax-only classification
+
+    // Per pass memos, a qualifier text is resolved at most once
+    private final Map<TextKey, Boolean> classQualifiers = new HashMap<>();
+    private final Map<TextKey, Boolean> staticMembers = new HashMap<>();
+
+    public QualifiedReferenceCollector(PsiJavaFile file, int threshold, FoldingLevel level, int resolveBudget) {
+        this(file, threshold, level, resolveBudget, null);
+    }
+
+    public QualifiedReferenceCollector(PsiJavaFile file, int threshold, FoldingLevel level, int resolveBudget,
+                                       @Nullable int[] candidateRuns) {
+        this(file, threshold, level, resolveBudget, candidateRuns, FqnSymbolTable.getInstance());
+    }
+
+    public QualifiedReferenceCollector(PsiJavaFile file, int threshold, FoldingLevel level, int resolveBudget,
+                                       @Nullable int[] candidateRuns, FqnSymbolTable symbols) {
+        this.symbols = symbols;
+        this.file = file;
+        this.text = file.getViewProvider().getContents();
+        this.threshold = threshold;
+        this.level = level;
+        this.candidateRuns = candidateRuns;
+        this.resolveBudget = level == FoldingLevel.FULL ? resolveBudget : 0;
+    }
+
+    private Set<String> getPackageRoots() {
+        if (packageRoots == null) {
+            packageRoots = new HashSet<>(WELL_KNOWN_PACKAGE_ROOTS);
+            addPackageRoot(file.getPackageName(), packageRoots);
+
+            PsiImportList importList = file.getImportList();
+            if (importList != null) {
+                for (PsiImportStatementBase importStatement : importList.getAllImportStatements()) {
+                    PsiJavaCodeReferenceElement importReference = importStatement.getImportReference();
+                    if (importReference != null) {
+                        addPackageRoot(importReference.getText(), packageRoots);
+                    }
+                }
+            }
+        }
+        return packageRoots;
+    }
+
+    private static void addPackageRoot(String qualifiedName, Set<String> packageRoots) {
+        int dot = qualifiedName.indexOf('.');
+        String root = dot > 0 ? qualifiedName.substring(0, dot) : qualifiedName;
+        if (!root.isEmpty()) {
+            packageRoots.add(root.trim());
+        }
+    }
+
+    // Once the budget is spent the rest of the pass classifies by syntax only
+    private boolean tryResolve() {
+        if (resolveBudget <= 0) {
+            if (level == FoldingLevel.FULL) {
+                refusedResolves++;
+            }
+            return false;
+        }
+        resolveBudget--;
+        return true;
+    }
+
+    // Resolves skipped because the budget was spent, what was collected since is classified by syntax only
+    public int getRefusedResolves() {
+        return refusedResolves;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public FoldingLevel getLevel() {
+        return level;
+    }
+
+    public FqnSymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public boolean isSyntaxOnly() {
+        return level != FoldingLevel.FULL;
+    }
+
+    public void collect(PsiElement element, Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        FoldingMetrics.current().nodesVisited += walk(element.getNode(), qualifiedNames, null);
+    }
+
+    // The syntax only half of collect, safe to run for several elements at once. Reference expressions that may
+    // have to be resolved are queued in document order, classifyDeferred then handles them.
+    public int collectSyntax(PsiElement element, Int2ObjectMap<List<QualifiedReference>> qualifiedNames,
+                             List<PsiReferenceExpression> deferred) {
+        return walk(element.getNode(), qualifiedNames, deferred);
+    }
+
+    // Runs on one thread in document order, so the resolve budget and the memos see what collect would have
+    public void classifyDeferred(List<PsiReferenceExpression> deferred,
+                                 Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        for (PsiReferenceExpression refExpr : deferred) {
+            classifyReferenceExpression(refExpr, qualifiedNames);
+        }
+    }
+
+    private int walk(ASTNode root, Int2ObjectMap<List<QualifiedReference>> qualifiedNames,
+                     @Nullable List<PsiReferenceExpression> deferred) {
+        // Walks the tree links instead of recursing, deep generated expressions cannot overflow the stack
+        int visited = 0;
+        ASTNode node = root;
+        while (true) {
+            ASTNode child = null;
+            if (visit(node, qualifiedNames, deferred)) {
+                visited++;
+                child = node.getFirstChildNode();
+            }
+            if (child != null) {
+                node = child;
+                continue;
+            }
+            while (node != root && node.getTreeNext() == null) {
+                node = node.getTreeParent();
+            }
+            if (node == root) {
+                return visited;
+            }
+            node = node.getTreeNext();
+        }
+    }
+
+    // Returns whether the children can hold qualified names
+    private boolean visit(ASTNode node, Int2ObjectMap<List<QualifiedReference>> qualifiedNames,
+                          @Nullable List<PsiReferenceExpression> deferred) {
+        if (node instanceof LeafElement) {
+            return false;
+        }
+        IElementType type = node.getElementType();
+        if (SKIPPED_SUBTREES.contains(type)) {
+            return false;
+        }
+        if (candidateRuns != null) {
+            int start = node.getStartOffset();
+            if (!overlapsRun(candidateRuns, start, start + node.getTextLength())) {
+                return false;
+            }
+        }
+
+        if (type == JavaElementType.TYPE) { // Also covers the types of casts and instanceof checks
+            processTypeReference(node, true, qualifiedNames);
+        } else if (type == JavaElementType.NEW_EXPRESSION) {
+            processNewExpression((PsiNewExpression) node.getPsi(), qualifiedNames);
+        } else if (type == JavaElementType.REFERENCE_EXPRESSION || type == JavaElementType.METHOD_REF_EXPRESSION) {
+            PsiReferenceExpression refExpr = (PsiReferenceExpression) node.getPsi();
+            if (level != FoldingLevel.TYPES_ONLY && isQualifiedByLongName(refExpr)) {
+                if (deferred != null) {
+                    deferred.add(refExpr);
+                } else {
+                    classifyReferenceExpression(refExpr, qualifiedNames);
+                }
+            }
+        } else if (REFERENCE_LISTS.contains(type)) {
+            if (node.getPsi() instanceof PsiReferenceList refList && refList.getParent() instanceof PsiClass) {
+                processReferenceList(refList, qualifiedNames);
+            }
+        }
+        return true;
+    }
+
+    private void processReferenceList(PsiReferenceList refList,
+                                      Int2ObjectMap<List<QualifiedReference>> qualifiedNames) { // Handle extends and implements
+        for (PsiJavaCodeReferenceElement ref : refList.getReferenceElements()) {
+            processTypeReference(ref.getNode(), false, qualifiedNames);
+        }
+    }
+
+    // The syntax checks, the qualifier still has to turn out to be a class
+    private boolean isQualifiedByLongName(PsiReferenceExpression refExpr) {
+        ASTNode refNode = refExpr.getNode();
+        int refStart = refNode.getStartOffset();
+        if (!contains(text, refStart, refStart + refNode.getTextLength(), '.')) {
+            return false;
+        }
+
+        PsiExpression qualifier = refExpr.getQualifierExpression();
+        if (qualifier == null) {
+            return false;
+        }
+
+        ASTNode qualifierNode = qualifier.getNode();
+        int start = qualifierNode.getStartOffset();
+        int end = start + qualifierNode.getTextLength();
+        return contains(text, start, end, '.') && end - start > threshold;
+    }
+
+    private void classifyReferenceExpression(PsiReferenceExpression refExpr,
+                                             Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        ASTNode refNode = refExpr.getNode();
+        int refStart = refNode.getStartOffset();
+        PsiExpression qualifier = Objects.requireNonNull(refExpr.getQualifierExpression());
+        ASTNode qualifierNode = qualifier.getNode();
+        int start = qualifierNode.getStartOffset();
+        int end = start + qualifierNode.getTextLength();
+
+        if (!isClassReference(qualifier, start, end)) {
+            return;
+        }
+
+        if (isStaticMemberReference(refExpr, refStart, refStart + refNode.getTextLength())) {
+            addReference(qualifierNode, start, end, end, qualifiedNames);
+        }
+    }
+
+    private boolean isStaticMemberReference(PsiReferenceExpression refExpr, int start, int end) {
+        TextKey memberText = new TextKey(text, start, end);
+        Boolean memo = staticMembers.get(memberText);
+        if (memo == null) {
+            int refusedBefore = refusedResolves;
+            memo = computeIsStaticMemberReference(refExpr);
+            if (refusedResolves == refusedBefore) { // Guesses are cheap, and each one has to count as refused
+                staticMembers.put(memberText, memo);
+            }
+        }
+        return memo;
+    }
+
+    private boolean computeIsStaticMemberReference(PsiReferenceExpression refExpr) {
+        if (!tryResolve()) { // A member accessed through a class name can only be static
+            if (refExpr instanceof PsiMethodReferenceExpression methodRef) {
+                return !methodRef.isConstructor();
+            }
+            if (refExpr.getParent() instanceof PsiMethodCallExpression) {
+                return true;
+            }
+            PsiElement nameElement = refExpr.getReferenceNameElement();
+            if (nameElement == null) {
+                return false;
+            }
+            ASTNode nameNode = nameElement.getNode();
+            int nameStart = nameNode.getStartOffset();
+            return !looksLikeTypeName(nameStart, nameStart + nameNode.getTextLength());
+        }
+
+        PsiElement resolved = resolve(refExpr);
+        if (resolved instanceof PsiField || resolved instanceof PsiMethod) {
+            PsiModifierListOwner modifierListOwner = (PsiModifierListOwner) resolved;
+            return modifierListOwner.hasModifierProperty(PsiModifier.STATIC);
+        }
+        return false;
+    }
+
+    private static PsiElement resolve(PsiReferenceExpression refExpr) {
+        FoldingMetrics.PassMetrics metrics = FoldingMetrics.current();
+        long start = System.nanoTime();
+        try {
+            return refExpr.resolve();
+        } finally {
+            metrics.resolveCalls++;
+            metrics.resolveNanos += System.nanoTime() - start;
+        }
+    }
+
+    private boolean looksLikeTypeName(int start, int end) {
+        if (start >= end || !Character.isUpperCase(text.charAt(start))) {
+            return false;
+        }
+        for (int i = start + 1; i < end; i++) {
+            if (Character.isLowerCase(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isClassReference(PsiExpression expr, int start, int end) {
+        if (!(expr instanceof PsiReferenceExpression refExpr)) {
+            return false;
+        }
+
+        TextKey qualifierText = new TextKey(text, start, end);
+        Boolean memo = classQualifiers.get(qualifierText);
+        if (memo == null) {
+            int refusedBefore = refusedResolves;
+            memo = computeIsClassReference(refExpr, start, end);
+            if (refusedResolves == refusedBefore) {
+                classQualifiers.put(qualifierText, memo);
+            }
+        }
+        return memo;
+    }
+
+    private boolean computeIsClassReference(PsiReferenceExpression refExpr, int start, int end) {
+        if (tryResolve()) {
+            PsiElement resolved = resolve(refExpr);
+
+            if (resolved instanceof PsiClass) {
+                return true;
+            }
+        } else if (!startsWithSegment(text, start, end, getPackageRoots())) {
+            return false;
+        }
+
+        return lastSegmentStartsUppercase(text, start, end);
+    }
+
+    private void processNewExpression(PsiNewExpression newExpression,
+                                      Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        PsiJavaCodeReferenceElement classReference = newExpression.getClassReference();
+        if (classReference != null) {
+            processTypeReference(classReference.getNode(), false, qualifiedNames);
+        }
+    }
+
+    private void processTypeReference(ASTNode node, boolean isTypeElement,
+                                      Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        int start = node.getStartOffset();
+        int end = start + node.getTextLength();
+        if (start == end) {
+            return;
+        }
+
+        if (isTypeElement && text.charAt(start) == '?') { // Don't handle wildcard types, let them be handled by the recursion
+            return;
+        }
+
+        int genericStart = genericStart(text, start, end);
+        int rangeEnd = genericStart > start ? genericStart : end;
+        int mainTypeEnd = genericStart > start ? trimEnd(text, start, genericStart) : end;
+
+        if (!contains(text, start, mainTypeEnd, '.') || mainTypeEnd - start <= threshold) {
+            return;
+        }
+        if (isTypeElement && isArrayType(text, start, mainTypeEnd)) {
+            return;
+        }
+
+        addReference(node, start, rangeEnd, mainTypeEnd, qualifiedNames);
+    }
+
+    private void addReference(ASTNode node, int start, int rangeEnd, int nameEnd,
+                              Int2ObjectMap<List<QualifiedReference>> qualifiedNames) {
+        // Only references that pass the threshold are looked up, a known name is not copied again
+        int fqnId = symbols.intern(text, start, nameEnd);
+        FqnSymbolTable.SymbolInfo info = symbols.getInfo(fqnId);
+        if (info.simpleNameStart() == 0) {
+            return;
+        }
+
+        QualifiedReference qRef = new QualifiedReference(node, new TextRange(start, rangeEnd), fqnId);
+        List<QualifiedReference> references = qualifiedNames.get(info.simpleNameId());
+        if (references == null) {
+            references = new ArrayList<>();
+            qualifiedNames.put(info.simpleNameId(), references);
+        }
+        references.add(qRef);
+    }
+
+    // A range of the file text compared by content, memo keys without copying the text or interning it
+    private static final class TextKey {
+
+        private final CharSequence text;
+        private final int start;
+        private final int end;
+        private final int hash;
+
+        private TextKey(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TextKey other) || other.hash != hash || other.end - other.start != end - start) {
+                return false;
+            }
+            for (int i = 0; i < end - start; i++) {
+                if (other.text.charAt(other.start + i) != text.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.wdsj.fqnfolder.folding;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ReverseSegmentTrie {
+
+    private final Node root = new Node();
+
+    public void add(String qualifiedName) {
+        Node node = root;
+        int end = qualifiedName.length();
+        while (end > 0) {
+            int dot = qualifiedName.lastIndexOf('.', end - 1);
+            node = node.children.computeIfAbsent(qualifiedName.substring(dot + 1, end), k -> new Node());
+            node.count++;
+            end = dot;
+        }
+    }
+
+    public String shortestUniqueSuffix(String qualifiedName) {
+        Node node = root;
+        int end = qualifiedName.length();
+        while (end > 0) {
+            int dot = qualifiedName.lastIndexOf('.', end - 1);
+            node = node.children.get(qualifiedName.substring(dot + 1, end));
+            if (node == null || node.count == 1) { // Only this name continues below this segment
+                return qualifiedName.substring(dot + 1);
+            }
+            end = dot;
+        }
+        return qualifiedName; // The whole name is a suffix of another one
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>(4);
+        private int count;
+    }
+}
@@ -0,0 +1,144 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.settings.PluginSettings;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.VisibleAreaEvent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.util.concurrent.ExecutorService;
+
+// Large files fold what the editors show first, the rest of the file is filled in the background
+public class ViewportFolding implements Disposable {
+
+    private static final int MARGIN_LINES = 150;
+    private static final Key<TextRange> VISIBLE_RANGE_KEY = Key.create("fqnfolder.visibleRange");
+    private static final Key<TextRange> FOLDED_WINDOW_KEY = Key.create("fqnfolder.foldedWindow");
+    private static final Key<PinnedPlaceholders> PINS_KEY = Key.create("fqnfolder.pinnedPlaceholders");
+
+    private final ExecutorService fillExecutor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("FQNFolder Viewport Fill", 1);
+
+    public ViewportFolding() {
+        EditorFactory.getInstance().getEventMulticaster().addVisibleAreaListener(this::visibleAreaChanged, this);
+    }
+
+    public static ViewportFolding getInstance() {
+        return ApplicationManager.getApplication().getService(ViewportFolding.class);
+    }
+
+    public static boolean isLargeFile(PsiJavaFile file, Document document, PluginSettings settings) {
+        // The fill relies on the member caches to resume after write actions
+        return settings.isViewportFirst() && settings.isIncrementalFolding() && file.isPhysical()
+                && document.getLineCount() > settings.getViewportFirstLines();
+    }
+
+    @Nullable
+    public TextRange findWindow(PsiJavaFile file, Document document, PluginSettings settings) {
+        if (!isLargeFile(file, document, settings)) {
+            return null;
+        }
+
+        int start = Integer.MAX_VALUE;
+        int end = -1;
+        for (Editor editor : EditorFactory.getInstance().getEditors(document)) {
+            TextRange visible = editor.getUserData(VISIBLE_RANGE_KEY);
+            if (visible == null) { // Not laid out yet, the caret is the best guess
+                int caret = editor.getCaretModel().getOffset();
+                visible = new TextRange(caret, caret);
+            }
+            start = Math.min(start, visible.getStartOffset());
+            end = Math.max(end, visible.getEndOffset());
+        }
+        if (end < 0) {
+            return null;
+        }
+
+        int length = document.getTextLength();
+        int firstLine = Math.max(0, document.getLineNumber(Math.min(start, length)) - MARGIN_LINES);
+        int lastLine = Math.min(document.getLineCount() - 1, document.getLineNumber(Math.min(end, length)) + MARGIN_LINES);
+        return new TextRange(document.getLineStartOffset(firstLine), document.getLineEndOffset(lastLine));
+    }
+
+    public void scheduleFill(PsiJavaFile file, TextRange window) {
+        Project project = file.getProject();
+        VirtualFile virtualFile = file.getViewProvider().getVirtualFile();
+        virtualFile.putUserData(FOLDED_WINDOW_KEY, window);
+
+        // Restarted after each write action, members collected so far stay cached so no chunk is done twice
+        ReadAction.nonBlocking(() -> QualifiedNameFoldingBuilder.precomputeFoldedNames(file))
+                .expireWhen(() -> project.isDisposed() || !file.isValid())
+                .coalesceBy(this, virtualFile)
+                .finishOnUiThread(ModalityState.any(), ignored -> {
+                    virtualFile.putUserData(FOLDED_WINDOW_KEY, null);
+                    FoldingRefresher.getInstance().refreshFile(project, virtualFile);
+                })
+                .submit(fillExecutor);
+    }
+
+    // Only large files pin placeholders, the others are always folded as a whole
+    @Nullable
+    public static PinnedPlaceholders findPins(PsiJavaFile file, PluginSettings settings) {
+        Document document = file.getViewProvider().getDocument();
+        if (document == null || !isLargeFile(file, document, settings)) {
+            return null;
+        }
+
+        VirtualFile virtualFile = file.getViewProvider().getVirtualFile();
+        long symbolGeneration = FqnSymbolTable.getInstance().getModificationCount();
+        synchronized (PINS_KEY) {
+            PinnedPlaceholders pins = virtualFile.getUserData(PINS_KEY);
+            if (pins == null || pins.getSettingsStamp() != settings.getModificationCount()
+                    || pins.getSymbolGeneration() != symbolGeneration) { // Pinned by ids of an emptied symbol table
+                pins = new PinnedPlaceholders(settings.getModificationCount(), symbolGeneration);
+                virtualFile.putUserData(PINS_KEY, pins);
+            }
+            return pins;
+        }
+    }
+
+    // Once the whole file is folded no window pass needs to agree with it anymore
+    public static void dropPins(PsiJavaFile file) {
+        VirtualFile virtualFile = file.getViewProvider().getVirtualFile();
+        synchronized (PINS_KEY) {
+            virtualFile.putUserData(PINS_KEY, null);
+        }
+    }
+
+    private void visibleAreaChanged(VisibleAreaEvent event) {
+        Editor editor = event.getEditor();
+        Rectangle area = event.getNewRectangle();
+        Project project = editor.getProject();
+        if (project == null || area == null || area.height <= 0) {
+            return;
+        }
+
+        int start = editor.logicalPositionToOffset(editor.xyToLogicalPosition(area.getLocation()));
+        int end = editor.logicalPositionToOffset(editor.xyToLogicalPosition(new Point(area.x, area.y + area.height)));
+        TextRange visible = new TextRange(start, end);
+        editor.putUserData(VISIBLE_RANGE_KEY, visible);
+
+        // Scrolled past the folded part before the fill finished
+        VirtualFile file = editor.getVirtualFile();
+        TextRange window = file != null ? file.getUserData(FOLDED_WINDOW_KEY) : null;
+        if (window != null && !window.contains(visible)) {
+            FoldingRefresher.getInstance().refresh(project, editor);
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
@@ -4,7 +4,9 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.util.xmlb.XmlSerializerUtil;
+import com.intellij.util.xmlb.annotations.Transient;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -12,10 +14,25 @@ import org.jetbrains.annotations.Nullable;
         name = "QualifiedNameFolderSettings",
         storages = @Storage("QualifiedNameFolderSettings.xml")
 )
-public class PluginSettings implements PersistentStateComponent<PluginSettings> {
+public class PluginSettings implements PersistentStateComponent<PluginSettings>, ModificationTracker {
 
     public int foldingThreshold = 16;
     public boolean enabled = true;
+    public boolean projectWideNames = false;
+    public boolean incrementalFolding = true;
+    public int resolveBudget = 2000;
+    public boolean adaptiveFolding = true;
+    public int timeBudgetMillis = 500;
+    public int sizeBudgetLines = 20000;
+    public boolean viewportFirst = true;
+    public int viewportFirstLines = 3000;
+    public boolean parallelCollection = false;
+    public int parallelCollectionLines = 10000;
+    public String excludedFilePatterns = "";
+    public boolean excludeGeneratedSources = true;
+    public String excludedPackages = "";
+
+    private volatile long modificationCount;
 
     public static PluginSettings getInstance() {
         return ApplicationManager.getApplication().getService(PluginSettings.class);
@@ -30,6 +47,13 @@ public class PluginSettings implements PersistentStateComponent<PluginSettings>
     @Override
     public void loadState(@NotNull PluginSettings state) {
         XmlSerializerUtil.copyBean(state, this);
+        modificationCount++;
+    }
+
+    @Transient
+    @Override
+    public long getModificationCount() {
+        return modificationCount;
     }
 
     public int getFoldingThreshold() {
@@ -37,7 +61,10 @@ public class PluginSettings implements PersistentStateComponent<PluginSettings>
     }
 
     public void setFoldingThreshold(int foldingThreshold) {
-        this.foldingThreshold = foldingThreshold;
+        if (this.foldingThreshold != foldingThreshold) {
+            this.foldingThreshold = foldingThreshold;
+            modificationCount++;
+        }
     }
 
     public boolean isEnabled() {
@@ -45,6 +72,152 @@ public class PluginSettings implements PersistentStateComponent<PluginSettings>
     }
 
     public void setEnabled(boolean enabled) {
-        this.enabled = enabled;
+        if (this.enabled != enabled) {
+            this.enabled = enabled;
+            modificationCount++;
+        }
+    }
+
+    public boolean isProjectWideNames() {
+        return projectWideNames;
+    }
+
+    public void setProjectWideNames(boolean projectWideNames) {
+        if (this.projectWideNames != projectWideNames) {
+            this.projectWideNames = projectWideNames;
+            modificationCount++;
+        }
+    }
+
+    public boolean isIncrementalFolding() {
+        return incrementalFolding;
+    }
+
+    public void setIncrementalFolding(boolean incrementalFolding) {
+        if (this.incrementalFolding != incrementalFolding) {
+            this.incrementalFolding = incrementalFolding;
+            modificationCount++;
+        }
+    }
+
+    public int getResolveBudget() {
+        return resolveBudget;
+    }
+
+    public void setResolveBudget(int resolveBudget) {
+        if (this.resolveBudget != resolveBudget) {
+            this.resolveBudget = resolveBudget;
+            modificationCount++;
+        }
+    }
+
+    public boolean isAdaptiveFolding() {
+        return adaptiveFolding;
+    }
+
+    public void setAdaptiveFolding(boolean adaptiveFolding) {
+        if (this.adaptiveFolding != adaptiveFolding) {
+            this.adaptiveFolding = adaptiveFolding;
+            modificationCount++;
+        }
+    }
+
+    public int getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public void setTimeBudgetMillis(int timeBudgetMillis) {
+        if (this.timeBudgetMillis != timeBudgetMillis) {
+            this.timeBudgetMillis = timeBudgetMillis;
+            modificationCount++;
+        }
+    }
+
+    public int getSizeBudgetLines() {
+        return sizeBudgetLines;
+    }
+
+    public void setSizeBudgetLines(int sizeBudgetLines) {
+        if (this.sizeBudgetLines != sizeBudgetLines) {
+            this.sizeBudgetLines = sizeBudgetLines;
+            modificationCount++;
+        }
+    }
+
+    public boolean isViewportFirst() {
+        return viewportFirst;
+    }
+
+    public void setViewportFirst(boolean viewportFirst) {
+        if (this.viewportFirst != viewportFirst) {
+            this.viewportFirst = viewportFirst;
+            modificationCount++;
+        }
+    }
+
+    public int getViewportFirstLines() {
+        return viewportFirstLines;
+    }
+
+    public void setViewportFirstLines(int viewportFirstLines) {
+        if (this.viewportFirstLines != viewportFirstLines) {
+            this.viewportFirstLines = viewportFirstLines;
+            modificationCount++;
+        }
+    }
+
+    public boolean isParallelCollection() {
+        return parallelCollection;
+    }
+
+    public void setParallelCollection(boolean parallelCollection) {
+        if (this.parallelCollection != parallelCollection) {
+            this.parallelCollection = parallelCollection;
+            modificationCount++;
+        }
+    }
+
+    public int getParallelCollectionLines() {
+        return parallelCollectionLines;
+    }
+
+    public void setParallelCollectionLines(int parallelCollectionLines) {
+        if (this.parallelCollectionLines != parallelCollectionLines) {
+            this.parallelCollectionLines = parallelCollectionLines;
+            modificationCount++;
+        }
+    }
+
+    public String getExcludedFilePatterns() {
+        return excludedFilePatterns;
+    }
+
+    public void setExcludedFilePatterns(String excludedFilePatterns) {
+        if (!this.excludedFilePatterns.equals(excludedFilePatterns)) {
+            this.excludedFilePatterns = excludedFilePatterns;
+            modificationCount++;
+        }
+    }
+
+    public boolean isExcludeGeneratedSources() {
+        return excludeGeneratedSources;
+    }
+
+    public void setExcludeGeneratedSources(boolean excludeGeneratedSources) {
+        if (this.excludeGeneratedSources != excludeGeneratedSources) {
+            this.excludeGeneratedSources = excludeGeneratedSources;
+            modificationCount++;
+        }
+    }
+
+    public String getExcludedPackages() {
+        return excludedPackages;
+    }
+
+    public void setExcludedPackages(String excludedPackages) {
+        if (!this.excludedPackages.equals(excludedPackages)) {
+            this.excludedPackages = excludedPackages;
+            modificationCount++;
+        }
     }
 }
\ No newline at end of file
@@ -1,8 +1,14 @@
 package io.wdsj.fqnfolder.settings;
 
+import io.wdsj.fqnfolder.folding.FoldingMetrics;
 import com.intellij.openapi.ui.ValidationInfo;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.ui.JBIntSpinner;
+import com.intellij.ui.TitledSeparator;
 import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.components.JBTextArea;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.FormBuilder;
 import com.intellij.util.ui.JBUI;
@@ -10,19 +16,52 @@ import com.intellij.util.ui.JBUI;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.util.Locale;
 
 public class PluginSettingsComponent {
 
     private final JPanel mainPanel;
     private final JBTextField foldingThresholdField;
     private final JBCheckBox enabledCheckBox;
+    private final JBCheckBox projectWideCheckBox;
+    private final JBCheckBox incrementalCheckBox;
+    private final JBIntSpinner resolveBudgetSpinner;
+    private final JBCheckBox viewportCheckBox;
+    private final JBIntSpinner viewportLinesSpinner;
+    private final JBCheckBox parallelCheckBox;
+    private final JBIntSpinner parallelLinesSpinner;
+    private final JBCheckBox adaptiveCheckBox;
+    private final JBIntSpinner timeBudgetSpinner;
+    private final JBIntSpinner sizeBudgetSpinner;
+    private final JBTextArea excludedFilesArea;
+    private final JBCheckBox excludeGeneratedCheckBox;
+    private final JBTextArea excludedPackagesArea;
     private final JBLabel errorLabel;
+    private final JBLabel metricsLabel;
 
     public PluginSettingsComponent() {
         foldingThresholdField = new JBTextField();
         foldingThresholdField.setColumns(10);
 
         enabledCheckBox = new JBCheckBox("Enable qualified name folding");
+        projectWideCheckBox = new JBCheckBox("Fold each name the same way in every file of the project");
+        incrementalCheckBox = new JBCheckBox("Only re-collect edited members (incremental folding)");
+        resolveBudgetSpinner = new JBIntSpinner(2000, 0, 100000, 100);
+        viewportCheckBox = new JBCheckBox("Fold the visible part of large files first");
+        viewportLinesSpinner = new JBIntSpinner(3000, 100, 10000000, 500);
+        incrementalCheckBox.addActionListener(e -> updateIncrementalControls());
+        viewportCheckBox.addActionListener(e -> updateIncrementalControls());
+        parallelCheckBox = new JBCheckBox("Collect the members of very large files in parallel");
+        parallelLinesSpinner = new JBIntSpinner(10000, 100, 10000000, 1000);
+        parallelCheckBox.addActionListener(e -> updateIncrementalControls());
+        adaptiveCheckBox = new JBCheckBox("Fold less in files that are too large or too slow to fold");
+        timeBudgetSpinner = new JBIntSpinner(500, 10, 60000, 50);
+        sizeBudgetSpinner = new JBIntSpinner(20000, 100, 10000000, 1000);
+        adaptiveCheckBox.addActionListener(e -> updateAdaptiveControls());
+        excludedFilesArea = new JBTextArea(3, 30);
+        excludeGeneratedCheckBox = new JBCheckBox("Do not fold generated sources");
+        excludedPackagesArea = new JBTextArea(3, 30);
 
         errorLabel = new JBLabel();
         errorLabel.setForeground(JBUI.CurrentTheme.Label.errorForeground());
@@ -45,12 +84,57 @@ public class PluginSettingsComponent {
             }
         });
 
+        metricsLabel = new JBLabel();
+        metricsLabel.setVerticalAlignment(SwingConstants.TOP);
+        refreshMetrics();
+
+        JButton refreshMetricsButton = new JButton("Refresh");
+        refreshMetricsButton.addActionListener(e -> refreshMetrics());
+        JButton dumpMetricsButton = new JButton("Dump to IDE Log");
+        dumpMetricsButton.addActionListener(e -> FoldingMetrics.getInstance().dumpToLog());
+        JButton resetMetricsButton = new JButton("Reset");
+        resetMetricsButton.addActionListener(e -> {
+            FoldingMetrics.getInstance().reset();
+            refreshMetrics();
+        });
+
+        JPanel metricsButtons = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        metricsButtons.add(refreshMetricsButton);
+        metricsButtons.add(dumpMetricsButton);
+        metricsButtons.add(resetMetricsButton);
+
         mainPanel = FormBuilder.createFormBuilder()
                 .addComponent(enabledCheckBox)
                 .addVerticalGap(10)
                 .addLabeledComponent(new JBLabel("Folding threshold (characters):"), foldingThresholdField, 1, false)
                 .addComponent(errorLabel)
                 .addComponentToRightColumn(new JBLabel("Names longer than this will be folded"))
+                .addComponent(projectWideCheckBox)
+                .addComponentToRightColumn(new JBLabel("Names are told apart from all names the project uses, " +
+                        "not only the ones in the file"))
+                .addVerticalGap(10)
+                .addComponent(incrementalCheckBox)
+                .addLabeledComponent(new JBLabel("Resolve budget per fold pass:"), resolveBudgetSpinner, 1, false)
+                .addComponentToRightColumn(new JBLabel("Static member accesses beyond this are folded by syntax only"))
+                .addComponent(viewportCheckBox)
+                .addLabeledComponent(new JBLabel("Large file size (lines):"), viewportLinesSpinner, 1, false)
+                .addComponentToRightColumn(new JBLabel("The rest of the file is folded in the background, " +
+                        "requires incremental folding"))
+                .addComponent(parallelCheckBox)
+                .addLabeledComponent(new JBLabel("Very large file size (lines):"), parallelLinesSpinner, 1, false)
+                .addVerticalGap(10)
+                .addComponent(adaptiveCheckBox)
+                .addLabeledComponent(new JBLabel("Time budget per fold pass (ms):"), timeBudgetSpinner, 1, false)
+                .addLabeledComponent(new JBLabel("File size budget (lines):"), sizeBudgetSpinner, 1, false)
+                .addComponentToRightColumn(new JBLabel("<html>Over budget, a file first stops resolving static members, " +
+                        "then folds only types, then stops folding.<br>The editor shows a banner for such files.</html>"))
+                .addVerticalGap(10)
+                .addLabeledComponent(new JBLabel("Excluded files:"), new JBScrollPane(excludedFilesArea), 1, true)
+                .addComponentToRightColumn(new JBLabel("One glob per line, e.g. **/build/** or *Generated.java"))
+                .addComponent(excludeGeneratedCheckBox)
+                .addLabeledComponent(new JBLabel("Excluded packages:"), new JBScrollPane(excludedPackagesArea), 1, true)
+                .addComponentToRightColumn(new JBLabel("One package per line, names in these packages and " +
+                        "their subpackages are never folded"))
                 .addVerticalGap(10)
                 .addComponent(new JBLabel("<html><body>" +
                         "<b>Examples:</b><br>" +
@@ -58,6 +142,10 @@ public class PluginSettingsComponent {
                         "• java.awt.List vs java.util.List → awt.List vs util.List<br>" +
                         "• java.lang.System.out → System.out" +
                         "</body></html>"))
+                .addVerticalGap(10)
+                .addComponent(new TitledSeparator("Diagnostics"))
+                .addComponent(metricsLabel)
+                .addComponent(metricsButtons)
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
     }
@@ -83,6 +171,41 @@ public class PluginSettingsComponent {
         }
     }
 
+    private void updateIncrementalControls() {
+        viewportCheckBox.setEnabled(incrementalCheckBox.isSelected());
+        viewportLinesSpinner.setEnabled(incrementalCheckBox.isSelected() && viewportCheckBox.isSelected());
+        parallelCheckBox.setEnabled(incrementalCheckBox.isSelected());
+        parallelLinesSpinner.setEnabled(incrementalCheckBox.isSelected() && parallelCheckBox.isSelected());
+    }
+
+    private void updateAdaptiveControls() {
+        timeBudgetSpinner.setEnabled(adaptiveCheckBox.isSelected());
+        sizeBudgetSpinner.setEnabled(adaptiveCheckBox.isSelected());
+    }
+
+    private void refreshMetrics() {
+        FoldingMetrics metrics = FoldingMetrics.getInstance();
+        StringBuilder html = new StringBuilder("<html><body><table>" +
+                "<tr><th align='left'>File size</th><th>Passes</th><th>p50</th><th>p99</th>" +
+                "<th>Collect</th><th>Resolve</th><th>Conflicts</th><th>Nodes</th><th>Resolves</th>" +
+                "<th>Refs</th><th>Folds</th><th>File cache</th><th>Member cache</th><th>Retained</th></tr>");
+        for (FoldingMetrics.BucketSummary summary : metrics.getBucketSummaries()) {
+            html.append(String.format(Locale.ROOT,
+                    "<tr><td>%s</td><td>%d</td><td>%.1f ms</td><td>%.1f ms</td><td>%.1f ms</td><td>%.1f ms</td>" +
+                            "<td>%.1f ms</td><td>%.0f</td><td>%.0f</td><td>%.0f</td><td>%.0f</td><td>%.0f%%</td><td>%.0f%%</td><td>%.1f KB</td></tr>",
+                    StringUtil.escapeXmlEntities(summary.name()), summary.passes(), summary.p50Millis(), summary.p99Millis(),
+                    summary.collectionMillis(), summary.resolveMillis(), summary.conflictMillis(),
+                    summary.nodesVisited(), summary.resolveCalls(), summary.references(), summary.descriptors(),
+                    summary.fileCacheHitRate() * 100, summary.memberCacheHitRate() * 100, summary.retainedKb()));
+        }
+        html.append("</table><br><b>Slowest passes:</b><br>");
+        for (FoldingMetrics.PassMetrics pass : metrics.getSlowestPasses()) {
+            html.append(StringUtil.escapeXmlEntities(pass.toString())).append("<br>");
+        }
+        html.append("</body></html>");
+        metricsLabel.setText(html.toString());
+    }
+
     private void showError(String message) {
         errorLabel.setText(message);
         errorLabel.setVisible(true);
@@ -122,6 +245,114 @@ public class PluginSettingsComponent {
         enabledCheckBox.setSelected(enabled);
     }
 
+    public boolean isProjectWideNames() {
+        return projectWideCheckBox.isSelected();
+    }
+
+    public void setProjectWideNames(boolean projectWideNames) {
+        projectWideCheckBox.setSelected(projectWideNames);
+    }
+
+    public boolean isIncrementalFolding() {
+        return incrementalCheckBox.isSelected();
+    }
+
+    public void setIncrementalFolding(boolean incrementalFolding) {
+        incrementalCheckBox.setSelected(incrementalFolding);
+        updateIncrementalControls();
+    }
+
+    public int getResolveBudget() {
+        return resolveBudgetSpinner.getNumber();
+    }
+
+    public void setResolveBudget(int resolveBudget) {
+        resolveBudgetSpinner.setNumber(resolveBudget);
+    }
+
+    public boolean isViewportFirst() {
+        return viewportCheckBox.isSelected();
+    }
+
+    public void setViewportFirst(boolean viewportFirst) {
+        viewportCheckBox.setSelected(viewportFirst);
+        updateIncrementalControls();
+    }
+
+    public int getViewportFirstLines() {
+        return viewportLinesSpinner.getNumber();
+    }
+
+    public void setViewportFirstLines(int viewportFirstLines) {
+        viewportLinesSpinner.setNumber(viewportFirstLines);
+    }
+
+    public boolean isParallelCollection() {
+        return parallelCheckBox.isSelected();
+    }
+
+    public void setParallelCollection(boolean parallelCollection) {
+        parallelCheckBox.setSelected(parallelCollection);
+        updateIncrementalControls();
+    }
+
+    public int getParallelCollectionLines() {
+        return parallelLinesSpinner.getNumber();
+    }
+
+    public void setParallelCollectionLines(int parallelCollectionLines) {
+        parallelLinesSpinner.setNumber(parallelCollectionLines);
+    }
+
+    public boolean isAdaptiveFolding() {
+        return adaptiveCheckBox.isSelected();
+    }
+
+    public void setAdaptiveFolding(boolean adaptiveFolding) {
+        adaptiveCheckBox.setSelected(adaptiveFolding);
+        updateAdaptiveControls();
+    }
+
+    public int getTimeBudgetMillis() {
+        return timeBudgetSpinner.getNumber();
+    }
+
+    public void setTimeBudgetMillis(int timeBudgetMillis) {
+        timeBudgetSpinner.setNumber(timeBudgetMillis);
+    }
+
+    public int getSizeBudgetLines() {
+        return sizeBudgetSpinner.getNumber();
+    }
+
+    public void setSizeBudgetLines(int sizeBudgetLines) {
+        sizeBudgetSpinner.setNumber(sizeBudgetLines);
+    }
+
+    public String getExcludedFilePatterns() {
+        return excludedFilesArea.getText().trim();
+    }
+
+    public void setExcludedFilePatterns(String excludedFilePatterns) {
+        excludedFilesArea.setText(excludedFilePatterns);
+    }
+
+    public boolean isExcludeGeneratedSources() {
+        return excludeGeneratedCheckBox.isSelected();
+    }
+
+    public void setExcludeGeneratedSources(boolean excludeGeneratedSources) {
+        excludeGeneratedCheckBox.setSelected(excludeGeneratedSources);
+    }
+
+    public String getExcludedPackages() {
+        return excludedPackagesArea.getText().trim();
+    }
+
+    public void setExcludedPackages(String excludedPackages) {
+        excludedPackagesArea.setText(excludedPackages);
+    }
+
     public ValidationInfo validate() {
         String text = foldingThresholdField.getText().trim();
         if (text.isEmpty()) {
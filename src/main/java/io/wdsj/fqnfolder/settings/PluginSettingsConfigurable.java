@@ -1,14 +1,7 @@
 package io.wdsj.fqnfolder.settings;
 
-import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
-import com.intellij.codeInsight.folding.CodeFoldingManager;
-import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.EditorFactory;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
+import io.wdsj.fqnfolder.folding.FoldingRefresher;
 import com.intellij.openapi.options.Configurable;
-import com.intellij.openapi.project.Project;
-import com.intellij.openapi.project.ProjectManager;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.Nullable;
 
@@ -40,21 +33,46 @@ public class PluginSettingsConfigurable implements Configurable {
     public boolean isModified() {
         PluginSettings settings = PluginSettings.getInstance();
         return settingsComponent.getFoldingThreshold() != settings.getFoldingThreshold() ||
-                settingsComponent.isEnabled() != settings.isEnabled();
+                settingsComponent.isEnabled() != settings.isEnabled() ||
+                settingsComponent.isProjectWideNames() != settings.isProjectWideNames() ||
+                settingsComponent.isIncrementalFolding() != settings.isIncrementalFolding() ||
+                settingsComponent.getResolveBudget() != settings.getResolveBudget() ||
+                settingsComponent.isViewportFirst() != settings.isViewportFirst() ||
+                settingsComponent.getViewportFirstLines() != settings.getViewportFirstLines() ||
+                settingsComponent.isParallelCollection() != settings.isParallelCollection() ||
+                settingsComponent.getParallelCollectionLines() != settings.getParallelCollectionLines() ||
+                settingsComponent.isAdaptiveFolding() != settings.isAdaptiveFolding() ||
+                settingsComponent.getTimeBudgetMillis() != settings.getTimeBudgetMillis() ||
+                settingsComponent.getSizeBudgetLines() != settings.getSizeBudgetLines() ||
+                !settingsComponent.getExcludedFilePatterns().equals(settings.getExcludedFilePatterns()) ||
+                settingsComponent.isExcludeGeneratedSources() != settings.isExcludeGeneratedSources() ||
+                !settingsComponent.getExcludedPackages().equals(settings.getExcludedPackages());
     }
 
     @Override
     public void apply() {
         PluginSettings settings = PluginSettings.getInstance();
 
-        boolean wasEnabled = settings.isEnabled();
-        int oldThreshold = settings.getFoldingThreshold();
+        long oldModificationCount = settings.getModificationCount();
 
         settings.setEnabled(settingsComponent.isEnabled());
         settings.setFoldingThreshold(settingsComponent.getFoldingThreshold());
-
-        if (wasEnabled != settings.isEnabled() || oldThreshold != settings.getFoldingThreshold()) {
-            ApplicationManager.getApplication().invokeLater(this::refreshAllEditors);
+        settings.setProjectWideNames(settingsComponent.isProjectWideNames());
+        settings.setIncrementalFolding(settingsComponent.isIncrementalFolding());
+        settings.setResolveBudget(settingsComponent.getResolveBudget());
+        settings.setViewportFirst(settingsComponent.isViewportFirst());
+        settings.setViewportFirstLines(settingsComponent.getViewportFirstLines());
+        settings.setParallelCollection(settingsComponent.isParallelCollection());
+        settings.setParallelCollectionLines(settingsComponent.getParallelCollectionLines());
+        settings.setAdaptiveFolding(settingsComponent.isAdaptiveFolding());
+        settings.setTimeBudgetMillis(settingsComponent.getTimeBudgetMillis());
+        settings.setSizeBudgetLines(settingsComponent.getSizeBudgetLines());
+        settings.setExcludedFilePatterns(settingsComponent.getExcludedFilePatterns());
+        settings.setExcludeGeneratedSources(settingsComponent.isExcludeGeneratedSources());
+        settings.setExcludedPackages(settingsComponent.getExcludedPackages());
+
+        if (settings.getModificationCount() != oldModificationCount) {
+            FoldingRefresher.getInstance().scheduleRefresh();
         }
     }
 
@@ -63,31 +81,23 @@ public class PluginSettingsConfigurable implements Configurable {
         PluginSettings settings = PluginSettings.getInstance();
         settingsComponent.setFoldingThreshold(settings.getFoldingThreshold());
         settingsComponent.setEnabled(settings.isEnabled());
+        settingsComponent.setProjectWideNames(settings.isProjectWideNames());
+        settingsComponent.setIncrementalFolding(settings.isIncrementalFolding());
+        settingsComponent.setResolveBudget(settings.getResolveBudget());
+        settingsComponent.setViewportFirst(settings.isViewportFirst());
+        settingsComponent.setViewportFirstLines(settings.getViewportFirstLines());
+        settingsComponent.setParallelCollection(settings.isParallelCollection());
+        settingsComponent.setParallelCollectionLines(settings.getParallelCollectionLines());
+        settingsComponent.setAdaptiveFolding(settings.isAdaptiveFolding());
+        settingsComponent.setTimeBudgetMillis(settings.getTimeBudgetMillis());
+        settingsComponent.setSizeBudgetLines(settings.getSizeBudgetLines());
+        settingsComponent.setExcludedFilePatterns(settings.getExcludedFilePatterns());
+        settingsComponent.setExcludeGeneratedSources(settings.isExcludeGeneratedSources());
+        settingsComponent.setExcludedPackages(settings.getExcludedPackages());
     }
 
     @Override
     public void disposeUIResources() {
         settingsComponent = null;
     }
-
-    private void refreshAllEditors() {
-        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
-            if (!project.isDisposed()) {
-                FileDocumentManager.getInstance().saveAllDocuments();
-
-                ApplicationManager.getApplication().runReadAction(() -> {
-                    CodeFoldingManager foldingManager = CodeFoldingManager.getInstance(project);
-
-                    Editor[] editors = EditorFactory.getInstance().getAllEditors();
-                    for (Editor editor : editors) {
-                        if (!editor.isDisposed()) {
-                            foldingManager.updateFoldRegions(editor);
-                        }
-                    }
-                });
-
-                DaemonCodeAnalyzer.getInstance(project).restart();
-            }
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.settings.PluginSettings;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.LightJavaCodeInsightFixtureTestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class FoldingDegradationTest extends LightJavaCodeInsightFixtureTestCase {
+
+    private PluginSettings settings;
+    private boolean originalAdaptive;
+    private int originalTimeBudget;
+    private int originalSizeBudget;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        settings = PluginSettings.getInstance();
+        originalAdaptive = settings.isAdaptiveFolding();
+        originalTimeBudget = settings.getTimeBudgetMillis();
+        originalSizeBudget = settings.getSizeBudgetLines();
+        settings.setAdaptiveFolding(true);
+        settings.setTimeBudgetMillis(100);
+        settings.setSizeBudgetLines(1_000);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            settings.setAdaptiveFolding(originalAdaptive);
+            settings.setTimeBudgetMillis(originalTimeBudget);
+            settings.setSizeBudgetLines(originalSizeBudget);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testSmallFileFoldsFully() {
+        PsiFile file = configure("Small.java", 500);
+        assertEquals(FoldingLevel.FULL, levelFor(file));
+    }
+
+    public void testFileOverSizeBudgetStepsDownOnce() {
+        PsiFile file = configure("Large.java", 2_000);
+        assertEquals(FoldingLevel.NO_STATIC_RESOLVE, levelFor(file));
+        assertEquals(FoldingLevel.NO_STATIC_RESOLVE, levelFor(file));
+    }
+
+    public void testSingleSlowPassKeepsLevel() {
+        PsiFile file = configure("Slow.java", 500);
+        levelFor(file);
+        recordPass(file, 1_000);
+        assertEquals(FoldingLevel.FULL, levelFor(file));
+    }
+
+    public void testRepeatedSlowPassesStepDown() {
+        PsiFile file = configure("Slow.java", 500);
+        levelFor(file);
+        for (int i = 0; i < FoldingDegradation.OVERRUNS_TO_STEP_DOWN; i++) {
+            recordPass(file, 1_000);
+        }
+        assertEquals(FoldingLevel.NO_STATIC_RESOLVE, levelFor(file));
+    }
+
+    public void testFastPassResetsOverruns() {
+        PsiFile file = configure("Slow.java", 500);
+        levelFor(file);
+        for (int i = 0; i < FoldingDegradation.OVERRUNS_TO_STEP_DOWN - 1; i++) {
+            recordPass(file, 1_000);
+        }
+        recordPass(file, 10);
+        recordPass(file, 1_000);
+        assertEquals(FoldingLevel.FULL, levelFor(file));
+    }
+
+    public void testRestoreIgnoresSizeBudget() {
+        PsiFile file = configure("Large.java", 2_000);
+        levelFor(file);
+        FoldingDegradation.restore(getProject(), file.getViewProvider().getVirtualFile());
+        assertEquals(FoldingLevel.FULL, levelFor(file));
+    }
+
+    private PsiFile configure(String name, int lines) {
+        return myFixture.configureByText(name, StressJavaFiles.largeClass(lines));
+    }
+
+    private FoldingLevel levelFor(PsiFile file) {
+        Document document = myFixture.getEditor().getDocument();
+        return FoldingDegradation.levelFor(file, document, settings);
+    }
+
+    private void recordPass(PsiFile file, long millis) {
+        FoldingDegradation.recordPass(file, TimeUnit.MILLISECONDS.toNanos(millis), settings);
+    }
+}
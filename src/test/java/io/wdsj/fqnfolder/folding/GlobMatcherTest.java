@@ -0,0 +1,48 @@
+package io.wdsj.fqnfolder.folding;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class GlobMatcherTest extends TestCase {
+
+    public void testFileNameGlobMatchesInAnyDirectory() {
+        GlobMatcher matcher = new GlobMatcher(List.of("*Generated.java"));
+        assertTrue(matcher.matches("FooGenerated.java"));
+        assertTrue(matcher.matches("src/main/java/com/foo/FooGenerated.java"));
+        assertFalse(matcher.matches("src/main/java/com/foo/Foo.java"));
+        assertFalse(matcher.matches("src/FooGenerated.java/Foo.java"));
+    }
+
+    public void testDirectoryGlob() {
+        GlobMatcher matcher = new GlobMatcher(List.of("**/build/**"));
+        assertTrue(matcher.matches("build/generated/Foo.java"));
+        assertTrue(matcher.matches("module/build/Foo.java"));
+        assertFalse(matcher.matches("module/builder/Foo.java"));
+        assertFalse(matcher.matches("module/src/Foo.java"));
+    }
+
+    public void testStarStaysInOneSegment() {
+        GlobMatcher matcher = new GlobMatcher(List.of("/src/gen/*.java"));
+        assertTrue(matcher.matches("src/gen/Foo.java"));
+        assertFalse(matcher.matches("src/gen/foo/Foo.java"));
+        assertFalse(matcher.matches("other/src/gen/Foo.java"));
+    }
+
+    public void testQuestionMarkIsOneCharacter() {
+        GlobMatcher matcher = new GlobMatcher(List.of("vendor/?/**"));
+        assertTrue(matcher.matches("vendor/a/Foo.java"));
+        assertFalse(matcher.matches("vendor/ab/Foo.java"));
+        assertFalse(matcher.matches("vendor//Foo.java"));
+    }
+
+    public void testAnyGlobMatches() {
+        GlobMatcher matcher = new GlobMatcher(List.of("**/third_party/**", "*.gen.java"));
+        assertTrue(matcher.matches("lib/third_party/Foo.java"));
+        assertTrue(matcher.matches("src/Foo.gen.java"));
+        assertFalse(matcher.matches("src/Foo.java"));
+        // The lazily built states give the same answers the second time
+        assertTrue(matcher.matches("lib/third_party/Foo.java"));
+        assertFalse(matcher.matches("src/Foo.java"));
+    }
+}
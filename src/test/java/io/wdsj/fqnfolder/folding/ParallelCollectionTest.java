@@ -0,0 +1,64 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightJavaCodeInsightFixtureTestCase;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+
+import java.util.*;
+
+public class ParallelCollectionTest extends LightJavaCodeInsightFixtureTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        for (String supportClass : StressJavaFiles.supportClasses()) {
+            myFixture.addClass(supportClass);
+        }
+    }
+
+    public void testLargeClassMatchesSequential() {
+        PsiJavaFile file = (PsiJavaFile) myFixture.configureByText("LargeClass.java", StressJavaFiles.largeClass(5_000));
+        assertSameAsSequential(file, newCollector(file, 500), newCollector(file, 500));
+    }
+
+    // About 530 distinct resolves against a budget of 100, the parallel path must spend it on the same references
+    public void testStaticAccessMatchesSequential() {
+        PsiJavaFile file = (PsiJavaFile) myFixture.configureByText("StaticAccessMethods.java",
+                StressJavaFiles.staticAccessMethods(200, 10));
+        QualifiedReferenceCollector sequential = newCollector(file, 100);
+        QualifiedReferenceCollector parallel = newCollector(file, 100);
+        assertSameAsSequential(file, sequential, parallel);
+        assertTrue("Sequential budget was not exhausted", sequential.getRefusedResolves() > 0);
+        assertTrue("Parallel budget was not exhausted", parallel.getRefusedResolves() > 0);
+    }
+
+    private static QualifiedReferenceCollector newCollector(PsiJavaFile javaFile, int resolveBudget) {
+        return new QualifiedReferenceCollector(javaFile, 16, FoldingLevel.FULL, resolveBudget);
+    }
+
+    private static void assertSameAsSequential(PsiJavaFile javaFile, QualifiedReferenceCollector sequentialCollector,
+                                               QualifiedReferenceCollector parallelCollector) {
+        Map<Integer, Set<QualifiedReference>> sequential = collect(javaFile, sequentialCollector, false);
+        Map<Integer, Set<QualifiedReference>> parallel = collect(javaFile, parallelCollector, true);
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, parallel);
+    }
+
+    private static Map<Integer, Set<QualifiedReference>> collect(PsiJavaFile javaFile,
+                                                                 QualifiedReferenceCollector collector, boolean parallel) {
+        PsiTreeUtil.processElements(javaFile, element -> { // Start without member caches
+            IncrementalReferenceCollector.invalidate(element);
+            return true;
+        });
+
+        Int2ObjectMap<List<QualifiedReference>> collected = new IncrementalReferenceCollector(collector, parallel).collect(javaFile);
+
+        Map<Integer, Set<QualifiedReference>> result = new HashMap<>();
+        for (Int2ObjectMap.Entry<List<QualifiedReference>> entry : collected.int2ObjectEntrySet()) {
+            result.put(entry.getIntKey(), new HashSet<>(entry.getValue()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,129 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.settings.PluginSettings;
+import com.intellij.lang.folding.FoldingDescriptor;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.LightJavaCodeInsightFixtureTestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class QualifiedNameFoldingPerformanceTest extends LightJavaCodeInsightFixtureTestCase {
+
+    private static final double BUDGET_SCALE = Double.parseDouble(System.getProperty("fqnfolder.perf.budgetScale", "1.0"));
+    private static final int RUNS = 5;
+
+    private PluginSettings settings;
+    private int originalThreshold;
+    private boolean originalIncremental;
+    private boolean originalAdaptive;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        settings = PluginSettings.getInstance();
+        originalThreshold = settings.getFoldingThreshold();
+        originalIncremental = settings.isIncrementalFolding();
+        originalAdaptive = settings.isAdaptiveFolding();
+        settings.setIncrementalFolding(false); // Every measured pass walks the whole file
+        settings.setAdaptiveFolding(false); // Measured at full level, however large or slow the file is
+
+        for (String supportClass : StressJavaFiles.supportClasses()) {
+            myFixture.addClass(supportClass);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            settings.setFoldingThreshold(originalThreshold);
+            settings.setIncrementalFolding(originalIncremental);
+            settings.setAdaptiveFolding(originalAdaptive);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testLargeClass() {
+        PsiFile file = myFixture.configureByText("LargeClass.java", StressJavaFiles.largeClass(20_000));
+        FoldingDescriptor[] descriptors = assertFoldingWithinBudget(file, 3_000, 512L << 20);
+        assertTrue(descriptors.length > 10_000);
+    }
+
+    public void testDeepGenericNesting() {
+        PsiFile file = myFixture.configureByText("DeepGenerics.java", StressJavaFiles.deepGenerics(1_000, 12));
+        FoldingDescriptor[] descriptors = assertFoldingWithinBudget(file, 2_000, 256L << 20);
+        assertTrue(descriptors.length >= 1_000 * 12 * 3);
+    }
+
+    public void testStaticConstantAccess() {
+        PsiFile file = myFixture.configureByText("StaticAccess.java", StressJavaFiles.staticConstantAccess(10_000));
+        FoldingDescriptor[] descriptors = assertFoldingWithinBudget(file, 2_000, 256L << 20);
+        assertEquals(10_000, descriptors.length);
+    }
+
+    public void testCollidingSimpleNames() {
+        PsiFile file = myFixture.configureByText("Collisions.java", StressJavaFiles.collidingNames(10_000));
+        FoldingDescriptor[] descriptors = assertFoldingWithinBudget(file, 2_000, 256L << 20);
+        assertEquals(20_000, descriptors.length);
+    }
+
+    public void testUnchangedFileIsLookup() {
+        PsiFile file = myFixture.configureByText("LargeClass.java", StressJavaFiles.largeClass(20_000));
+        Document document = myFixture.getEditor().getDocument();
+        QualifiedNameFoldingBuilder builder = new QualifiedNameFoldingBuilder();
+        builder.buildFoldRegions(file, document, false);
+
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            builder.buildFoldRegions(file, document, false);
+            times[i] = System.nanoTime() - start;
+        }
+        assertWithinBudget("Repeated pass time (ms)", TimeUnit.NANOSECONDS.toMillis(median(times)), 200);
+    }
+
+    private FoldingDescriptor[] assertFoldingWithinBudget(PsiFile file, long timeBudgetMillis, long allocationBudgetBytes) {
+        Document document = myFixture.getEditor().getDocument();
+        QualifiedNameFoldingBuilder builder = new QualifiedNameFoldingBuilder();
+        FoldingDescriptor[] descriptors = builder.buildFoldRegions(file, document, false); // Warm up
+
+        long[] times = new long[RUNS];
+        long[] allocations = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            invalidateFoldCaches();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            descriptors = builder.buildFoldRegions(file, document, false);
+            times[i] = System.nanoTime() - start;
+            allocations[i] = allocatedBytes() - allocatedBefore;
+        }
+
+        assertWithinBudget("Fold pass time (ms)", TimeUnit.NANOSECONDS.toMillis(median(times)), timeBudgetMillis);
+        assertWithinBudget("Fold pass allocation (bytes)", median(allocations), allocationBudgetBytes);
+        return descriptors;
+    }
+
+    private void invalidateFoldCaches() {
+        int threshold = settings.getFoldingThreshold();
+        settings.setFoldingThreshold(threshold + 1);
+        settings.setFoldingThreshold(threshold);
+    }
+
+    private static void assertWithinBudget(String what, long actual, long budget) {
+        long scaledBudget = (long) (budget * BUDGET_SCALE);
+        assertTrue(what + ": " + actual + " exceeds the budget of " + scaledBudget, actual <= scaledBudget);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,57 @@
+package io.wdsj.fqnfolder.folding;
+
+import io.wdsj.fqnfolder.folding.QualifiedNameFoldingBuilder.QualifiedReference;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.testFramework.fixtures.LightJavaCodeInsightFixtureTestCase;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class QualifiedReferenceCollectorTest extends LightJavaCodeInsightFixtureTestCase {
+
+    private static final String UTIL = "package com.example.generated.util;\n\n" +
+            "public class Strings {\n" +
+            "    public Strings() {}\n" +
+            "    public static String trim(String value) { return value; }\n" +
+            "    public String self(String value) { return value; }\n" +
+            "}\n";
+
+    private static final String METHOD_REFERENCES = "package com.example.test;\n\n" +
+            "import java.util.function.Function;\n" +
+            "import java.util.function.Supplier;\n\n" +
+            "public class MethodReferences {\n" +
+            "    Function<String, String> trim = com.example.generated.util.Strings::trim;\n" +
+            "    Supplier<Object> create = com.example.generated.util.Strings::new;\n" +
+            "}\n";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myFixture.addClass(UTIL);
+    }
+
+    public void testStaticMethodReferenceIsFolded() {
+        assertEquals(List.of("com.example.generated.util.Strings"), collect(METHOD_REFERENCES, FoldingLevel.FULL));
+    }
+
+    public void testStaticMethodReferenceIsFoldedBySyntax() {
+        assertEquals(List.of("com.example.generated.util.Strings"),
+                collect(METHOD_REFERENCES, FoldingLevel.NO_STATIC_RESOLVE));
+    }
+
+    private List<String> collect(String text, FoldingLevel level) {
+        PsiJavaFile file = (PsiJavaFile) myFixture.configureByText("Test.java", text);
+        Int2ObjectMap<List<QualifiedReference>> qualifiedNames = new Int2ObjectOpenHashMap<>();
+        new QualifiedReferenceCollector(file, 16, level, 100).collect(file, qualifiedNames);
+
+        List<String> folded = new ArrayList<>();
+        for (List<QualifiedReference> references : qualifiedNames.values()) {
+            for (QualifiedReference reference : references) {
+                folded.add(reference.range().substring(text));
+            }
+        }
+        return folded;
+    }
+}
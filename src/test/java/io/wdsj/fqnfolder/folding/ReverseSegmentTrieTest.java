@@ -0,0 +1,57 @@
+package io.wdsj.fqnfolder.folding;
+
+import junit.framework.TestCase;
+
+public class ReverseSegmentTrieTest extends TestCase {
+
+    public void testSingleNameFoldsToSimpleName() {
+        ReverseSegmentTrie trie = trieOf("java.util.List");
+        assertEquals("List", trie.shortestUniqueSuffix("java.util.List"));
+    }
+
+    public void testCollidingNamesKeepOneMoreSegment() {
+        ReverseSegmentTrie trie = trieOf("java.util.List", "java.awt.List");
+        assertEquals("util.List", trie.shortestUniqueSuffix("java.util.List"));
+        assertEquals("awt.List", trie.shortestUniqueSuffix("java.awt.List"));
+    }
+
+    // Compared by segment, a character suffix match must not make util.List ambiguous
+    public void testSegmentsAreComparedWhole() {
+        ReverseSegmentTrie trie = trieOf("com.xutil.List", "com.util.List");
+        assertEquals("xutil.List", trie.shortestUniqueSuffix("com.xutil.List"));
+        assertEquals("util.List", trie.shortestUniqueSuffix("com.util.List"));
+    }
+
+    public void testDeepCollision() {
+        ReverseSegmentTrie trie = trieOf("org.a.impl.Node", "org.b.impl.Node", "org.c.Node");
+        assertEquals("a.impl.Node", trie.shortestUniqueSuffix("org.a.impl.Node"));
+        assertEquals("b.impl.Node", trie.shortestUniqueSuffix("org.b.impl.Node"));
+        assertEquals("c.Node", trie.shortestUniqueSuffix("org.c.Node"));
+    }
+
+    public void testNameThatIsWholeSuffixOfAnother() {
+        ReverseSegmentTrie trie = trieOf("util.List", "java.util.List");
+        assertEquals("util.List", trie.shortestUniqueSuffix("util.List"));
+        assertEquals("java.util.List", trie.shortestUniqueSuffix("java.util.List"));
+    }
+
+    public void testOuterClassNames() {
+        ReverseSegmentTrie trie = trieOf("java.util.Map.Entry", "com.example.Entry", "java.util.AbstractMap.Entry");
+        assertEquals("Map.Entry", trie.shortestUniqueSuffix("java.util.Map.Entry"));
+        assertEquals("example.Entry", trie.shortestUniqueSuffix("com.example.Entry"));
+        assertEquals("AbstractMap.Entry", trie.shortestUniqueSuffix("java.util.AbstractMap.Entry"));
+    }
+
+    public void testUnknownNameKeepsItsLastSegment() {
+        ReverseSegmentTrie trie = trieOf("java.util.List");
+        assertEquals("Set", trie.shortestUniqueSuffix("java.util.Set"));
+    }
+
+    private static ReverseSegmentTrie trieOf(String... names) {
+        ReverseSegmentTrie trie = new ReverseSegmentTrie();
+        for (String name : names) {
+            trie.add(name);
+        }
+        return trie;
+    }
+}
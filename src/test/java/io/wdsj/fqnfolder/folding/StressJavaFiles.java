@@ -0,0 +1,107 @@
+package io.wdsj.fqnfolder.folding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class StressJavaFiles {
+
+    static final int PACKAGES = 24;
+    static final String[] COLLIDING_NAMES = {"Builder", "Entry", "Node"};
+
+    private StressJavaFiles() {
+    }
+
+    // One class per generated package, so static member accesses and colliding names resolve without a JDK
+    static List<String> supportClasses() {
+        List<String> classes = new ArrayList<>();
+        for (int p = 0; p < PACKAGES; p++) {
+            StringBuilder sb = new StringBuilder("package com.example.generated.pkg" + p + ";\n\n");
+            sb.append("public class Constants {\n");
+            for (int i = 0; i < 20; i++) {
+                sb.append("    public static final int VALUE_").append(i).append(" = ").append(i).append(";\n");
+            }
+            sb.append("    public static int compute(int value) { return value; }\n");
+            sb.append("}\n");
+            classes.add(sb.toString());
+
+            for (String name : COLLIDING_NAMES) {
+                classes.add("package com.example.generated.pkg" + p + ";\n\npublic class " + name + "<T> {\n" +
+                        "    public " + name + "() {}\n" +
+                        "}\n");
+            }
+        }
+        return classes;
+    }
+
+    static String largeClass(int lines) {
+        StringBuilder sb = new StringBuilder("package com.example.stress;\n\npublic class LargeClass {\n");
+        for (int m = 0, lineCount = 3; lineCount < lines; m++, lineCount += 11) {
+            int p = m % PACKAGES;
+            sb.append("    public java.util.List<java.lang.String> method").append(m).append("(java.util.Map<java.lang.String, java.lang.Integer> input) {\n");
+            sb.append("        java.util.List<java.lang.String> result = new java.util.ArrayList<>();\n");
+            sb.append("        java.util.concurrent.ConcurrentHashMap<java.lang.String, java.lang.Object> cache = new java.util.concurrent.ConcurrentHashMap<>();\n");
+            sb.append("        com.example.generated.pkg").append(p).append(".Builder<java.lang.String> builder = new com.example.generated.pkg").append(p).append(".Builder<>();\n");
+            sb.append("        int value = com.example.generated.pkg").append(p).append(".Constants.VALUE_").append(m % 20).append(";\n");
+            sb.append("        value += com.example.generated.pkg").append(p).append(".Constants.compute(value);\n");
+            sb.append("        Object o = (java.lang.Object) cache;\n");
+            sb.append("        if (o instanceof java.util.concurrent.ConcurrentHashMap) { value++; }\n");
+            sb.append("        return result;\n");
+            sb.append("    }\n\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    static String deepGenerics(int methods, int depth) {
+        StringBuilder sb = new StringBuilder("package com.example.stress;\n\npublic class DeepGenerics {\n");
+        for (int m = 0; m < methods; m++) {
+            sb.append("    java.util.Map<");
+            for (int d = 0; d < depth; d++) {
+                sb.append("java.util.concurrent.CopyOnWriteArrayList<java.util.concurrent.ConcurrentMap<java.lang.Integer, ");
+            }
+            sb.append("java.lang.Integer");
+            for (int d = 0; d < depth; d++) {
+                sb.append(">>");
+            }
+            sb.append(", java.util.Optional<java.lang.String>> field").append(m).append(";\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    static String staticConstantAccess(int statements) {
+        StringBuilder sb = new StringBuilder("package com.example.stress;\n\npublic class StaticAccess {\n    int run() {\n        int sum = 0;\n");
+        for (int s = 0; s < statements; s++) {
+            sb.append("        sum += com.example.generated.pkg").append(s % PACKAGES)
+                    .append(".Constants.VALUE_").append(s % 20).append(";\n");
+        }
+        sb.append("        return sum;\n    }\n}\n");
+        return sb.toString();
+    }
+
+    // Every package and constant pair occurs once per PACKAGES * 20 statements, spread over many members
+    static String staticAccessMethods(int methods, int statementsPerMethod) {
+        StringBuilder sb = new StringBuilder("package com.example.stress;\n\npublic class StaticAccessMethods {\n");
+        for (int m = 0, s = 0; m < methods; m++) {
+            sb.append("    int run").append(m).append("() {\n        int sum = 0;\n");
+            for (int i = 0; i < statementsPerMethod; i++, s++) {
+                String constants = "com.example.generated.pkg" + (s % PACKAGES) + ".Constants";
+                sb.append("        sum += ").append(constants).append(".VALUE_").append((s / PACKAGES) % 20).append(";\n");
+            }
+            sb.append("        return com.example.generated.pkg").append(m % PACKAGES).append(".Constants.compute(sum);\n    }\n\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    static String collidingNames(int statements) {
+        StringBuilder sb = new StringBuilder("package com.example.stress;\n\npublic class Collisions {\n    void run() {\n");
+        for (int s = 0; s < statements; s++) {
+            String name = COLLIDING_NAMES[s % COLLIDING_NAMES.length];
+            String type = "com.example.generated.pkg" + (s % PACKAGES) + "." + name;
+            sb.append("        ").append(type).append("<Object> v").append(s).append(" = new ").append(type).append("<>();\n");
+        }
+        sb.append("    }\n}\n");
+        return sb.toString();
+    }
+}